@@ -0,0 +1,74 @@
+package enigma;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/** Benchmarks of Alphabet.toInt on every character of an alphabet.
+ *  @author Manaal Siddiqui
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AlphabetBench {
+
+    /** Which alphabet to measure: "upper" is A-Z, which is indexed by a
+     *  direct table; "sparse" spreads its characters over the whole
+     *  char range, so that lookups go through the hash table. */
+    @Param({ "upper", "sparse" })
+    public String kind;
+
+    /** The alphabet measured. */
+    private Alphabet _alpha;
+
+    /** The characters of _alpha, in a scrambled order. */
+    private char[] _chars;
+
+    /** Build the alphabet and its lookup order. */
+    @Setup
+    public void setUp() {
+        if (kind.equals("upper")) {
+            _alpha = new Alphabet();
+        } else {
+            StringBuilder chars = new StringBuilder();
+            for (int i = 0; i < 26; i++) {
+                chars.append((char) ('A' + i * 2503));
+            }
+            _alpha = new Alphabet(chars.toString());
+        }
+        _chars = new char[_alpha.size()];
+        for (int i = 0; i < _chars.length; i++) {
+            _chars[i] = _alpha.toChar(i * 7 % _alpha.size());
+        }
+    }
+
+    /** Look up every character. */
+    @Benchmark
+    public void toInt(Blackhole sink) {
+        for (char ch : _chars) {
+            sink.consume(_alpha.toInt(ch));
+        }
+    }
+
+    /** Test every character for membership. */
+    @Benchmark
+    public void contains(Blackhole sink) {
+        for (char ch : _chars) {
+            sink.consume(_alpha.contains(ch));
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package enigma;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/** Benchmarks of converting many short messages, each under its own
+ *  key, with one Session per message and with a Batch, reported per
+ *  set of messages.
+ *  @author Manaal Siddiqui
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BatchBench {
+
+    /** Letters in each message. */
+    static final int LENGTH = 64;
+
+    /** Number of messages. */
+    @Param({"16", "1024"})
+    public int lanes;
+
+    /** One session per message, in its starting state. */
+    private Session[] _sessions;
+
+    /** The messages, as alphabet indices by step, as for
+     *  Batch.convert(int[], int). */
+    private int[] _text;
+
+    /** Set up LANES sessions of the machine of caroll2.in, with
+     *  different starting settings, and their messages. */
+    @Setup
+    public void setUp() {
+        Session base = Fixtures.naval().session();
+        _sessions = new Session[lanes];
+        for (int l = 0; l < lanes; l++) {
+            _sessions[l] = base.copy();
+            _sessions[l].advance(l * 7919L);
+        }
+        char[] msg = Fixtures.message(Fixtures.UPPER,
+                                      lanes * LENGTH * 6 / 5 + 6);
+        _text = new int[lanes * LENGTH];
+        int k = 0;
+        for (char ch : msg) {
+            if (ch != ' ' && k < _text.length) {
+                _text[k] = Fixtures.UPPER.toInt(ch);
+                k += 1;
+            }
+        }
+    }
+
+    /** Convert every message with a copy of its own session. */
+    @Benchmark
+    public void sessions(Blackhole sink) {
+        for (int l = 0; l < lanes; l++) {
+            Session s = _sessions[l].copy();
+            for (int t = 0; t < LENGTH; t++) {
+                sink.consume(s.convert(_text[t * lanes + l]));
+            }
+        }
+    }
+
+    /** Convert all the messages at once with a Batch. */
+    @Benchmark
+    public void batch(Blackhole sink) {
+        int[] text = _text.clone();
+        new Batch(_sessions[0].spec(), _sessions).convert(text, LENGTH);
+        sink.consume(text);
+    }
+}
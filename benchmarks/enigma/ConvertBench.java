@@ -0,0 +1,88 @@
+package enigma;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** Benchmarks of whole-message conversion, from 10 characters to 100MB
+ *  (100M characters), each starting from the same machine settings.
+ *  The largest sizes need a big heap, which the fork is given.
+ *  @author Manaal Siddiqui
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 3)
+@Fork(value = 1, jvmArgsAppend = { "-Xms4g", "-Xmx4g" })
+public class ConvertBench {
+
+    /** Number of characters in the message, blanks included. */
+    @Param({ "10", "1000", "100000", "10000000", "100000000" })
+    public int size;
+
+    /** The machine measured. */
+    private Machine _machine;
+
+    /** The message to convert. */
+    private String _message;
+
+    /** The message to convert, as characters. */
+    private char[] _text;
+
+    /** Buffer receiving converted characters. */
+    private char[] _out;
+
+    /** Create the message. */
+    @Setup(Level.Trial)
+    public void setUpMessage() {
+        _text = Fixtures.message(Fixtures.UPPER, size);
+        _message = new String(_text);
+        _out = new char[size];
+    }
+
+    /** Start each iteration from a freshly set-up machine, so that every
+     *  size sees the same rotor settings and an empty pool of cores. */
+    @Setup(Level.Iteration)
+    public void setUpMachine() {
+        _machine = Fixtures.naval();
+    }
+
+    /** Convert the message as a String. */
+    @Benchmark
+    public String convertString() {
+        return _machine.convert(_message);
+    }
+
+    /** Convert the message from one char array into another. */
+    @Benchmark
+    public int convertChars() {
+        return _machine.convert(_text, 0, size, _out, 0);
+    }
+
+    /** Convert the message with convertParallel. */
+    @Benchmark
+    public int convertParallel() {
+        return _machine.convertParallel(_text, 0, size, _out, 0);
+    }
+
+    /** Convert the message with a Keystream computed on another
+     *  thread, including the cost of starting and stopping it. */
+    @Benchmark
+    public int convertKeystream() {
+        try (Keystream keys = _machine.keystream()) {
+            return keys.convert(_text, 0, size, _out, 0);
+        }
+    }
+}
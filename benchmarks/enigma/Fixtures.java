@@ -0,0 +1,64 @@
+package enigma;
+
+import java.util.ArrayList;
+import java.util.Random;
+
+/** Machines and messages shared by the benchmarks.
+ *  @author Manaal Siddiqui
+ */
+final class Fixtures {
+
+    /** Not instantiable. */
+    private Fixtures() {
+    }
+
+    /** The standard upper-case alphabet. */
+    static final Alphabet UPPER = new Alphabet();
+
+    /** Plugboard cycles of testing/correct/caroll2.in. */
+    static final String PLUGS = "(BZ) (AR) (PD) (TQ)";
+
+    /** Return a five-slot, three-pawl machine with the rotors of
+     *  testing/correct/default.conf that naval() sets up. */
+    static Machine navalMachine() {
+        ArrayList<Rotor> all = new ArrayList<>();
+        all.add(new MovingRotor("I", new Permutation(
+            "(AELTPHQXRU) (BKNW) (CMOY) (DFG) (IV) (JZ) (S)", UPPER), "Q"));
+        all.add(new MovingRotor("III", new Permutation(
+            "(ABDHPEJT) (CFLVMZOYQIRWUKXSG) (N)", UPPER), "V"));
+        all.add(new MovingRotor("IV", new Permutation(
+            "(AEPLIYWCOXMRFZBSTGJQNH) (DV) (KU)", UPPER), "J"));
+        all.add(new FixedRotor("Beta", new Permutation(
+            "(ALBEVFCYODJWUGNMQTZSKPR) (HIX)", UPPER)));
+        all.add(new Reflector("B", new Permutation(
+            "(AE) (BN) (CK) (DQ) (FU) (GY) (HW) (IJ) (LO) (MP) (RX) (SZ) (TV)",
+            UPPER)));
+        return new Machine(UPPER, 5, 3, all);
+    }
+
+    /** Return navalMachine() set up as for
+     *  "* B Beta III IV I AXLE (BZ) (AR) (PD) (TQ)". */
+    static Machine naval() {
+        Machine m = navalMachine();
+        m.insertRotors(new String[] {"B", "Beta", "III", "IV", "I"});
+        m.setRotors("AXLE");
+        m.setPlugboard(new Permutation(PLUGS, UPPER));
+        return m;
+    }
+
+    /** Return a message of LEN characters of ALPHA, with a blank after
+     *  every fifth letter as in Main's output.  The letters are
+     *  pseudo-random, but the same on every call. */
+    static char[] message(Alphabet alpha, int len) {
+        Random random = new Random(61);
+        char[] text = new char[len];
+        for (int i = 0; i < len; i++) {
+            if (i % 6 == 5) {
+                text[i] = ' ';
+            } else {
+                text[i] = alpha.toChar(random.nextInt(alpha.size()));
+            }
+        }
+        return text;
+    }
+}
@@ -0,0 +1,71 @@
+package enigma;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/** Benchmarks of single-character conversion, Machine.convert(int),
+ *  reported per character.
+ *  @author Manaal Siddiqui
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MachineBench {
+
+    /** Characters converted per invocation. */
+    static final int BATCH = 1024;
+
+    /** The machine measured. */
+    private Machine _machine;
+
+    /** A message to convert, as alphabet indices. */
+    private int[] _message;
+
+    /** Set up the machine of caroll2.in and a message. */
+    @Setup
+    public void setUp() {
+        _machine = Fixtures.naval();
+        _message = new int[BATCH];
+        char[] text = Fixtures.message(Fixtures.UPPER, BATCH + BATCH / 5);
+        int k = 0;
+        for (char ch : text) {
+            if (ch != ' ' && k < BATCH) {
+                _message[k] = Fixtures.UPPER.toInt(ch);
+                k += 1;
+            }
+        }
+    }
+
+    /** Convert BATCH characters one at a time. */
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public void convertInt(Blackhole sink) {
+        for (int c : _message) {
+            sink.consume(_machine.convert(c));
+        }
+    }
+
+    /** Step the rotors BATCH times without converting anything. */
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public void moveRotors() {
+        for (int i = 0; i < BATCH; i++) {
+            _machine.moveRotors();
+        }
+    }
+}
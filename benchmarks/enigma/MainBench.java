@@ -0,0 +1,104 @@
+package enigma;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** End-to-end benchmarks of Main on the configurations and inputs in
+ *  testing/correct (found through the system property enigma.testing),
+ *  each input repeated to make files from about 1KB to about 100MB.
+ *  @author Manaal Siddiqui
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 3)
+@Fork(1)
+public class MainBench {
+
+    /** Name of the input file in testing/correct, without ".in".  Its
+     *  configuration is the .conf file of the same name, if there is
+     *  one, and otherwise default.conf. */
+    @Param({ "caroll", "caroll2", "carroll1-ring", "carroll3",
+             "carroll4" })
+    public String input;
+
+    /** Number of copies of the input in the file converted. */
+    @Param({ "1", "1000", "100000" })
+    public int copies;
+
+    /** Options given to Main, separated by blanks. */
+    @Param({ "", "--mmap", "--parallel" })
+    public String options;
+
+    /** Arguments to Main. */
+    private String[] _args;
+
+    /** Temporary files holding the input and output. */
+    private Path _in, _out;
+
+    /** Write the input file and choose the arguments. */
+    @Setup
+    public void setUp() throws IOException {
+        Path dir = Paths.get(System.getProperty("enigma.testing",
+                                                "testing/correct"));
+        Path conf = dir.resolve(input + ".conf");
+        if (!Files.exists(conf)) {
+            conf = dir.resolve("default.conf");
+        }
+        byte[] text = Files.readAllBytes(dir.resolve(input + ".in"));
+        _in = Files.createTempFile("enigma", ".in");
+        _out = Files.createTempFile("enigma", ".out");
+        try (OutputStream out =
+             new BufferedOutputStream(Files.newOutputStream(_in))) {
+            for (int k = 0; k < copies; k += 1) {
+                out.write(text);
+                if (text.length > 0 && text[text.length - 1] != '\n') {
+                    out.write('\n');
+                }
+            }
+        }
+        ArrayList<String> args = new ArrayList<>();
+        for (String opt : options.split(" ")) {
+            if (!opt.isEmpty()) {
+                args.add(opt);
+            }
+        }
+        args.add(conf.toString());
+        args.add(_in.toString());
+        args.add(_out.toString());
+        _args = args.toArray(new String[args.size()]);
+    }
+
+    /** Remove the temporary files. */
+    @TearDown
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(_in);
+        Files.deleteIfExists(_out);
+    }
+
+    /** Run Main on the input. */
+    @Benchmark
+    public void main() {
+        Main.main(_args);
+    }
+}
@@ -0,0 +1,75 @@
+package enigma;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/** Benchmarks of Permutation.permute and Permutation.invert, each
+ *  applied to every index of the alphabet in turn.
+ *  @author Manaal Siddiqui
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PermutationBench {
+
+    /** Cycles of the permutation measured: rotor I of default.conf, a
+     *  sparse plugboard, and the identity. */
+    @Param({ "(AELTPHQXRU) (BKNW) (CMOY) (DFG) (IV) (JZ) (S)",
+             "(BZ) (AR) (PD) (TQ)", "" })
+    public String cycles;
+
+    /** The permutation measured. */
+    private Permutation _perm;
+
+    /** Build the permutation. */
+    @Setup
+    public void setUp() {
+        _perm = new Permutation(cycles, Fixtures.UPPER);
+    }
+
+    /** Permute every index. */
+    @Benchmark
+    public void permute(Blackhole sink) {
+        for (int i = 0; i < _perm.size(); i++) {
+            sink.consume(_perm.permute(i));
+        }
+    }
+
+    /** Invert every index. */
+    @Benchmark
+    public void invert(Blackhole sink) {
+        for (int i = 0; i < _perm.size(); i++) {
+            sink.consume(_perm.invert(i));
+        }
+    }
+
+    /** Permute indices out of range, as Machine does after a rotor
+     *  offset, so that the wrap is measured too. */
+    @Benchmark
+    public void permuteWrapped(Blackhole sink) {
+        for (int i = -_perm.size(); i < 2 * _perm.size(); i += 3) {
+            sink.consume(_perm.permute(i));
+        }
+    }
+
+    /** Construct the permutation from its cycles. */
+    @Benchmark
+    public Permutation construct() {
+        return new Permutation(cycles, Fixtures.UPPER);
+    }
+}
@@ -1,24 +1,177 @@
 package enigma;
 
+import java.util.Arrays;
+
 /** An alphabet of encodable characters.  Provides a mapping from characters
  *  to and from indices into the alphabet.
  *  @author Manaal Siddiqui
  */
 class Alphabet {
     /** A new alphabet containing CHARS.  Character number #k has index
-     *  K (numbering from 0). No character may be duplicated.
+     *  K (numbering from 0). No character may be duplicated.  A
+     *  supplementary character (a surrogate pair in ALPHA) is a single
+     *  character of the alphabet.
      *  @param  alpha  a string representing the alphabet */
     Alphabet(String alpha) {
-        for (int i = 0; i < alpha.length(); i++) {
-            for (int j = 0; j < alpha.length(); j++) {
-                if (alpha.charAt(i) == alpha.charAt(j) && j != i) {
-                    System.out.println("error duplicates");
-                    throw new EnigmaException("duplicates found");
+        this._alpha = alpha;
+        alphaArray = this._alpha.toCharArray();
+        _symbols = alpha.codePoints().toArray();
+        _bmp = _symbols.length == alphaArray.length;
+        buildIndex();
+        buildByteIndex();
+    }
+
+    /** If my characters are exactly the 256 chars with codes 0-255, in any
+     *  order, build the tables that map bytes (as those chars) to indices
+     *  and back. */
+    private void buildByteIndex() {
+        if (_symbols.length != BYTES) {
+            return;
+        }
+        for (int cp : _symbols) {
+            if (cp >= BYTES) {
+                return;
+            }
+        }
+        _byteToInt = new int[BYTES];
+        _toByte = new byte[BYTES];
+        for (int i = 0; i < BYTES; i++) {
+            _byteToInt[_symbols[i]] = i;
+            _toByte[i] = (byte) _symbols[i];
+        }
+    }
+
+    /** Build the code-point-to-index table for _symbols, checking for
+     *  duplicates.  Alphabets whose code points span at most
+     *  MAX_DIRECT_SPAN values, or not much more than their size, use a
+     *  direct table; others use a perfect hash table. */
+    private void buildIndex() {
+        int lo = Character.MAX_CODE_POINT, hi = Character.MIN_CODE_POINT;
+        for (int cp : _symbols) {
+            lo = Math.min(lo, cp);
+            hi = Math.max(hi, cp);
+        }
+        if (_symbols.length == 0
+            || hi - lo < Math.max(MAX_DIRECT_SPAN, 2 * _symbols.length)) {
+            _base = lo;
+            _direct = new int[Math.max(0, hi - lo + 1)];
+            Arrays.fill(_direct, -1);
+            for (int i = 0; i < _symbols.length; i++) {
+                if (_direct[_symbols[i] - _base] != -1) {
+                    duplicate();
                 }
+                _direct[_symbols[i] - _base] = i;
             }
+        } else {
+            buildPerfectHash();
         }
-        this._alpha = alpha;
-        alphaArray = this._alpha.toCharArray();
+    }
+
+    /** Report a duplicated character. */
+    private static void duplicate() {
+        System.out.println("error duplicates");
+        throw new EnigmaException("duplicates found");
+    }
+
+    /** Build a perfect hash table for _symbols by hash and displace:
+     *  code points are sorted into buckets by hash(cp, 0), and then,
+     *  largest bucket first, each bucket is given the first displacement
+     *  D such that hash(cp, D) puts all its code points in empty slots.
+     *  A lookup therefore reads one displacement and probes one slot. */
+    private void buildPerfectHash() {
+        int n = _symbols.length;
+        int[] sorted = _symbols.clone();
+        Arrays.sort(sorted);
+        for (int i = 1; i < n; i++) {
+            if (sorted[i] == sorted[i - 1]) {
+                duplicate();
+            }
+        }
+        for (int cap = Integer.highestOneBit(2 * n - 1) << 1; ; cap <<= 1) {
+            if (tryPerfectHash(cap, Math.max(1, cap >> 2))) {
+                return;
+            }
+        }
+    }
+
+    /** Try to build a perfect hash table for _symbols with CAP slots and
+     *  NBUCKETS buckets, both powers of 2.  Returns false if some bucket
+     *  cannot be placed. */
+    private boolean tryPerfectHash(int cap, int nBuckets) {
+        int[][] buckets = new int[nBuckets][];
+        int[] sizes = new int[nBuckets];
+        for (int i = 0; i < _symbols.length; i++) {
+            int b = hash(_symbols[i], 0) & (nBuckets - 1);
+            if (buckets[b] == null) {
+                buckets[b] = new int[2];
+            } else if (sizes[b] == buckets[b].length) {
+                buckets[b] = Arrays.copyOf(buckets[b], 2 * sizes[b]);
+            }
+            buckets[b][sizes[b]] = i;
+            sizes[b] += 1;
+        }
+        Integer[] order = new Integer[nBuckets];
+        for (int b = 0; b < nBuckets; b++) {
+            order[b] = b;
+        }
+        Arrays.sort(order, (a, b) -> sizes[b] - sizes[a]);
+        _keys = new int[cap];
+        _slots = new int[cap];
+        _displace = new int[nBuckets];
+        Arrays.fill(_slots, -1);
+        int[] placed = new int[Math.max(1, sizes[order[0]])];
+        for (int b : order) {
+            if (sizes[b] == 0) {
+                break;
+            }
+            int d;
+            for (d = 1; d <= MAX_DISPLACEMENT; d++) {
+                int k;
+                for (k = 0; k < sizes[b]; k++) {
+                    int h = hash(_symbols[buckets[b][k]], d) & (cap - 1);
+                    if (_slots[h] != -1) {
+                        break;
+                    }
+                    _slots[h] = buckets[b][k];
+                    placed[k] = h;
+                }
+                if (k == sizes[b]) {
+                    break;
+                }
+                while (k > 0) {
+                    k -= 1;
+                    _slots[placed[k]] = -1;
+                }
+            }
+            if (d > MAX_DISPLACEMENT) {
+                return false;
+            }
+            _displace[b] = d;
+            for (int k = 0; k < sizes[b]; k++) {
+                _keys[placed[k]] = _symbols[buckets[b][k]];
+            }
+        }
+        return true;
+    }
+
+    /** Return the index of code point CP, or -1 if CP is not in this
+     *  alphabet. */
+    private int indexOf(int cp) {
+        if (_direct != null) {
+            int d = cp - _base;
+            return d >= 0 && d < _direct.length ? _direct[d] : -1;
+        }
+        int d = _displace[hash(cp, 0) & (_displace.length - 1)];
+        int h = hash(cp, d) & (_keys.length - 1);
+        return _keys[h] == cp ? _slots[h] : -1;
+    }
+
+    /** Return the hash of CP with displacement D. */
+    private static int hash(int cp, int d) {
+        int h = (cp ^ (d * 0x61C88647)) * 0x9E3779B1;
+        h ^= h >>> 15;
+        h *= 0x85EBCA6B;
+        return h ^ (h >>> 13);
     }
 
     /** A default alphabet of all upper-case characters. */
@@ -28,34 +181,89 @@ class Alphabet {
 
     /** Returns the size of the alphabet. */
     int size() {
-        return _alpha.length();
+        return _symbols.length;
+    }
+
+    /** Returns true iff this alphabet consists of the 256 chars
+     *  with codes 0-255, in some order, so that it can encode arbitrary
+     *  bytes, byte B standing for char (B & 0xff). */
+    boolean bytes() {
+        return _byteToInt != null;
+    }
+
+    /** Returns the index of the character standing for byte B.  This
+     *  alphabet must be bytes(). */
+    int byteToInt(byte b) {
+        return _byteToInt[b & 0xff];
+    }
+
+    /** Returns the byte for character number INDEX.  This alphabet must
+     *  be bytes(). */
+    byte toByte(int index) {
+        return _toByte[index];
+    }
+
+    /** Returns true iff every character of this alphabet is a single
+     *  char (none is a supplementary character), so that text in it can
+     *  be handled a char at a time. */
+    boolean bmp() {
+        return _bmp;
     }
+
     /** Returns true if CH is in this alphabet. */
     boolean contains(char ch) {
-        String element = Character.toString(ch);
-        return _alpha.contains(element);
+        return indexOf(ch) != -1;
+    }
+
+    /** Returns true if code point CP is in this alphabet. */
+    boolean containsCodePoint(int cp) {
+        return indexOf(cp) != -1;
     }
 
     /** Returns character number INDEX in the alphabet, where
-     *  0 <= INDEX < size(). */
+     *  0 <= INDEX < size().  The character must not be supplementary. */
     char toChar(int index) {
         if (index < 0 || index >= size()) {
             System.out.println("index error");
             throw new EnigmaException("index out of bounds");
         }
-        return alphaArray[index];
+        if (!_bmp && _symbols[index] > Character.MAX_VALUE) {
+            throw new EnigmaException("character is not a single char");
+        }
+        return (char) _symbols[index];
+    }
+
+    /** Returns the code point of character number INDEX in the alphabet,
+     *  where 0 <= INDEX < size(). */
+    int toCodePoint(int index) {
+        if (index < 0 || index >= size()) {
+            throw new EnigmaException("index out of bounds");
+        }
+        return _symbols[index];
     }
 
     /** Returns the index of character CH which must be in
      *  the alphabet. This is the inverse of toChar(). */
     int toInt(char ch) {
-        int result = _alpha.indexOf(ch);
+        int result = indexOf(ch);
         if (result == -1) {
             System.out.println("error not in alpha");
             throw new EnigmaException(ch + "not in alphabet");
         }
         return result;
     }
+
+    /** Returns the index of code point CP, which must be in the
+     *  alphabet.  This is the inverse of toCodePoint(). */
+    int codePointToInt(int cp) {
+        int result = indexOf(cp);
+        if (result == -1) {
+            throw new EnigmaException(new String(Character.toChars(cp))
+                                      + " not in alphabet");
+        }
+        return result;
+    }
+
     /** Returns the alpha
      * array. */
     public char[] getAlpha() {
@@ -67,5 +275,42 @@ class Alphabet {
 
     /** an array version of the alphabet.*/
     private char[] alphaArray;
-}
 
+    /** The code points of the alphabet, in order. */
+    private int[] _symbols;
+
+    /** True iff no character is supplementary. */
+    private boolean _bmp;
+
+    /** Number of distinct byte values. */
+    static final int BYTES = 256;
+
+    /** When I am bytes(), _byteToInt[b] is the index of char b. */
+    private int[] _byteToInt;
+
+    /** When I am bytes(), _toByte[k] is character k as a byte. */
+    private byte[] _toByte;
+
+    /** Widest range of code points always given a direct index table. */
+    private static final int MAX_DIRECT_SPAN = 1 << 12;
+
+    /** Most displacements tried for one perfect hash bucket before the
+     *  table is made bigger. */
+    private static final int MAX_DISPLACEMENT = 1 << 12;
+
+    /** Smallest code point in the alphabet; _direct[0] is its index. */
+    private int _base;
+
+    /** Direct table: _direct[cp - _base] is the index of cp, or -1. */
+    private int[] _direct;
+
+    /** Perfect hash table keys, used when _direct is null. */
+    private int[] _keys;
+
+    /** Perfect hash table values: _slots[h] is the index of _keys[h], or
+     *  -1 if slot h is empty. */
+    private int[] _slots;
+
+    /** Displacement of each perfect hash bucket. */
+    private int[] _displace;
+}
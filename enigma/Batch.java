@@ -0,0 +1,244 @@
+package enigma;
+
+import static enigma.EnigmaException.*;
+
+/** Many Enigma machines built to one MachineSpec, converting in
+ *  lockstep.  Where a Session keeps its state in a few small arrays
+ *  and objects, a Batch keeps the state of all its machines ("lanes")
+ *  side by side: the setting of the rotor in slot i of lane l is
+ *  _positions[i][l], and so on.  Each step of the batch advances every
+ *  lane and converts one character in each, in loops over the lanes
+ *  that have no branches or calls in them, so that the JIT can keep
+ *  them in vector registers.  Lane l behaves exactly like the Session
+ *  it was made from.
+ *  @author Manaal Siddiqui
+ */
+class Batch {
+
+    /** A batch whose lanes start in the states of SESSIONS, all of
+     *  which must be sessions of SPEC with rotors inserted and a
+     *  plugboard set.  The sessions themselves are not changed. */
+    Batch(MachineSpec spec, Session[] sessions) {
+        _spec = spec;
+        _size = spec.alphabet().size();
+        _lanes = sessions.length;
+        int n = spec.numRotors();
+        int size = _size;
+        int avail = spec.numAvailable();
+        _forward = spec.forwardWiring();
+        _inverse = spec.inverseWiring();
+        _notch = new boolean[avail * size];
+        _rotates = new boolean[avail];
+        for (int r = 0; r < avail; r++) {
+            for (int p : spec.notches(r)) {
+                _notch[r * size + p] = true;
+            }
+            _rotates[r] = spec.rotates(r);
+        }
+        _slots = new int[n][_lanes];
+        _positions = new int[n][_lanes];
+        _rings = new int[n][_lanes];
+        _plugs = new int[_lanes * size];
+        _plugboards = new Permutation[_lanes];
+        for (int l = 0; l < _lanes; l++) {
+            Session s = sessions[l];
+            if (s.spec() != spec) {
+                throw error("sessions of a batch must share its spec");
+            }
+            for (int i = 0; i < n; i++) {
+                _slots[i][l] = s.rotor(i);
+                _positions[i][l] = s.setting(i);
+                _rings[i][l] = s.ring(i);
+            }
+            _plugboards[l] = s.plugboard();
+            for (int c = 0; c < size; c++) {
+                _plugs[l * size + c] = s.plugboard().permute(c);
+            }
+        }
+        _column = new int[_lanes];
+        _shift = new int[_lanes];
+    }
+
+    /** Return the number of lanes. */
+    int lanes() {
+        return _lanes;
+    }
+
+    /** Return a new Session in the current state of LANE. */
+    Session session(int lane) {
+        int n = _spec.numRotors();
+        int[] slots = new int[n];
+        int[] positions = new int[n];
+        int[] rings = new int[_spec.numAvailable()];
+        for (int i = 0; i < n; i++) {
+            slots[i] = _slots[i][lane];
+            positions[i] = _positions[i][lane];
+            rings[slots[i]] = _rings[i][lane];
+        }
+        return new Session(_spec, slots, positions, rings,
+                           _plugboards[lane]);
+    }
+
+    /** Return the setting of the rotor in SLOT of LANE. */
+    int setting(int slot, int lane) {
+        return _positions[slot][lane];
+    }
+
+    /** Advance the rotors of every lane as for one keystroke, as
+     *  Session.moveRotors does (see Stepping.moves).  The rightmost slot
+     *  has no right neighbor, so it passes its own notch for one. */
+    void moveRotors() {
+        int n = _spec.numRotors();
+        int pawls = _spec.numPawls();
+        int size = _size;
+        for (int i = n - pawls; i < n; i++) {
+            int[] slot = _slots[i];
+            int[] posn = _positions[i];
+            int[] nextSlot = i < n - 1 ? _slots[i + 1] : slot;
+            int[] nextPosn = i < n - 1 ? _positions[i + 1] : posn;
+            for (int l = 0; l < _lanes; l++) {
+                int r = slot[l];
+                boolean move = Stepping.moves(
+                    i, n, pawls, _rotates[r], _notch[r * size + posn[l]],
+                    _notch[nextSlot[l] * size + nextPosn[l]]);
+                int p = posn[l] + (move ? 1 : 0);
+                posn[l] = p - (size & -(p >= size ? 1 : 0));
+            }
+        }
+    }
+
+    /** Advance every lane and convert one character in each: IN[l] is
+     *  the index in the alphabet of the character for lane l, and the
+     *  index of its conversion is stored in OUT[l].  IN and OUT may be
+     *  the same array. */
+    void convert(int[] in, int[] out) {
+        moveRotors();
+        int n = _spec.numRotors();
+        int size = _size;
+        int[] cur = _column;
+        int[] shift = _shift;
+        for (int l = 0; l < _lanes; l++) {
+            cur[l] = _plugs[l * size + in[l]];
+        }
+        for (int i = n - 1; i >= 0; i--) {
+            shifts(i);
+            pass(_forward, _slots[i], shift, cur);
+        }
+        for (int i = 1; i < n; i++) {
+            shifts(i);
+            pass(_inverse, _slots[i], shift, cur);
+        }
+        for (int l = 0; l < _lanes; l++) {
+            out[l] = _plugs[l * size + cur[l]];
+        }
+    }
+
+    /** Convert STEPS characters in every lane, in place.  TEXT holds
+     *  the characters as indices in the alphabet, by step: the
+     *  character for lane l at step t is TEXT[t * lanes() + l]. */
+    void convert(int[] text, int steps) {
+        int[] column = new int[_lanes];
+        for (int t = 0; t < steps; t++) {
+            System.arraycopy(text, t * _lanes, column, 0, _lanes);
+            convert(column, column);
+            System.arraycopy(column, 0, text, t * _lanes, _lanes);
+        }
+    }
+
+    /** Return the conversions of MSGS, one per lane, skipping
+     *  whitespace as Session.convert does.  All lanes step together for
+     *  as many steps as the longest message has letters, so afterwards
+     *  a lane with a shorter message has moved past its end; use
+     *  session to continue from a lane only when the messages are of
+     *  equal length. */
+    String[] convert(String[] msgs) {
+        if (msgs.length != _lanes) {
+            throw error("need one message per lane");
+        }
+        Alphabet alpha = _spec.alphabet();
+        int[][] letters = new int[_lanes][];
+        int steps = 0;
+        for (int l = 0; l < _lanes; l++) {
+            letters[l] = msgs[l].codePoints()
+                .filter(c -> !Character.isWhitespace(c))
+                .map(alpha::codePointToInt).toArray();
+            steps = Math.max(steps, letters[l].length);
+        }
+        int[] text = new int[steps * _lanes];
+        for (int l = 0; l < _lanes; l++) {
+            for (int t = 0; t < letters[l].length; t++) {
+                text[t * _lanes + l] = letters[l][t];
+            }
+        }
+        convert(text, steps);
+        String[] result = new String[_lanes];
+        for (int l = 0; l < _lanes; l++) {
+            StringBuilder out = new StringBuilder(letters[l].length);
+            for (int t = 0; t < letters[l].length; t++) {
+                out.appendCodePoint(alpha.toCodePoint(text[t * _lanes + l]));
+            }
+            result[l] = out.toString();
+        }
+        return result;
+    }
+
+    /** Set _shift[l] to the setting less the ring setting of the rotor
+     *  in slot I of lane l, modulo the alphabet size. */
+    private void shifts(int i) {
+        int[] posn = _positions[i];
+        int[] ring = _rings[i];
+        int[] shift = _shift;
+        int size = _size;
+        for (int l = 0; l < _lanes; l++) {
+            int s = posn[l] - ring[l];
+            shift[l] = s + (size & (s >> 31));
+        }
+    }
+
+    /** Pass each CUR[l] through the rotor SLOT[l], shifted by SHIFT[l],
+     *  using TABLE (_forward or _inverse). */
+    private void pass(int[] table, int[] slot, int[] shift, int[] cur) {
+        int size = _size;
+        int width = 2 * size;
+        for (int l = 0; l < _lanes; l++) {
+            int r = table[slot[l] * width + cur[l] + shift[l]] - shift[l];
+            cur[l] = r + (size & (r >> 31));
+        }
+    }
+
+    /** The specification of all my lanes. */
+    private final MachineSpec _spec;
+    /** Size of the alphabet. */
+    private final int _size;
+    /** Number of lanes. */
+    private final int _lanes;
+
+    /** The rotor wirings, as for MachineSpec.forwardWiring. */
+    private final int[] _forward;
+    /** The inverse rotor wirings, as for MachineSpec.inverseWiring. */
+    private final int[] _inverse;
+    /** _notch[r * size + p] is true iff rotor r is at a notch at setting
+     *  p. */
+    private final boolean[] _notch;
+    /** _rotates[r] is true iff rotor r has a ratchet. */
+    private final boolean[] _rotates;
+
+    /** _slots[i][l] is the index in _spec of the rotor in slot i of
+     *  lane l. */
+    private final int[][] _slots;
+    /** _positions[i][l] is the setting of the rotor in slot i of lane l. */
+    private final int[][] _positions;
+    /** _rings[i][l] is the ring setting of the rotor in slot i of
+     *  lane l. */
+    private final int[][] _rings;
+    /** _plugs[l * size + c] is the image of c under the plugboard of
+     *  lane l. */
+    private final int[] _plugs;
+    /** The plugboards of the lanes, for session. */
+    private final Permutation[] _plugboards;
+
+    /** Characters of the current step, one per lane. */
+    private final int[] _column;
+    /** Rotor shifts of the current slot, one per lane. */
+    private final int[] _shift;
+}
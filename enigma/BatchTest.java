@@ -0,0 +1,105 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+import static enigma.TestMachines.*;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+/** The suite of all JUnit tests for the Batch class.
+ *  @author Manaal Siddiqui
+ */
+public class BatchTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** The standard upper-case alphabet. */
+    private Alphabet alpha = new Alphabet();
+
+    /** Return a spec for five-slot, three-pawl machines with the rotors
+     *  of TestMachines.navalRotors() and rotor VI, which has two
+     *  notches. */
+    private MachineSpec naval() {
+        ArrayList<Rotor> all = navalRotors();
+        all.add(new MovingRotor("VI", new Permutation(
+            "(AJQDVLEOZWIYTS) (CGMNHFUX) (BPRK)", alpha), "ZM"));
+        return new MachineSpec(alpha, 5, 3, all);
+    }
+
+    /** Return N sessions of SPEC with keys drawn from RAND. */
+    private Session[] sessions(MachineSpec spec, int n, Random rand) {
+        Session[] result = new Session[n];
+        for (int k = 0; k < n; k++) {
+            ArrayList<String> moving = new ArrayList<>(
+                List.of("I", "III", "IV", "VI"));
+            Collections.shuffle(moving, rand);
+            String[] rotors = {"B", "Beta", moving.get(0), moving.get(1),
+                               moving.get(2)};
+            Session s = new Session(spec);
+            s.insertRotors(rotors);
+            s.setRotors(letters(4, rand));
+            s.setRings(letters(4, rand));
+            s.setPlugboard(new Permutation(rand.nextBoolean() ? ""
+                                           : "(AQ) (BZ) (MX)", alpha));
+            result[k] = s;
+        }
+        return result;
+    }
+
+    /** Return N random upper-case letters drawn from RAND. */
+    private String letters(int n, Random rand) {
+        StringBuilder result = new StringBuilder();
+        for (int k = 0; k < n; k++) {
+            result.append((char) ('A' + rand.nextInt(26)));
+        }
+        return result.toString();
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void testMatchesSessions() {
+        MachineSpec spec = naval();
+        Random rand = new Random(17);
+        Session[] sessions = sessions(spec, 37, rand);
+        Batch batch = new Batch(spec, sessions);
+        String[] msgs = new String[sessions.length];
+        for (int l = 0; l < msgs.length; l++) {
+            msgs[l] = letters(700, rand);
+        }
+        String[] result = batch.convert(msgs);
+        for (int l = 0; l < msgs.length; l++) {
+            Session s = sessions[l].copy();
+            assertEquals(s.convert(msgs[l]), result[l]);
+            Session after = batch.session(l);
+            for (int i = 0; i < 5; i++) {
+                assertEquals(s.setting(i), after.setting(i));
+                assertEquals(s.setting(i), batch.setting(i, l));
+            }
+        }
+    }
+
+    @Test
+    public void testConvertMessage() {
+        MachineSpec spec = naval();
+        Session s = new Session(spec);
+        s.insertRotors(new String[] {"B", "Beta", "III", "IV", "I"});
+        s.setRotors("AXLE");
+        s.setPlugboard(new Permutation("(BZ) (AR) (PD) (TQ)", alpha));
+        Batch batch = new Batch(spec, new Session[] {s, s.copy()});
+        String[] result = batch.convert(new String[] {
+            "FROM HIS SHOULDER HIAWATHA", "FROM HIS" });
+        assertEquals("HOIHLZKOMLIUEPHMDESOKBJ", result[0]);
+        assertEquals("HOIHLZK", result[1]);
+        assertEquals(4, s.setting(4));
+    }
+}
@@ -0,0 +1,462 @@
+package enigma;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static enigma.EnigmaException.*;
+
+/** A known-plaintext attack on machines built to a MachineSpec, in the
+ *  manner of the Turing-Welchman bombe.  Given a ciphertext and a crib
+ *  (plaintext believed to encipher to the start of the ciphertext), it
+ *  tries every rotor order and starting setting, with all ring settings
+ *  at 0, and reports those at which the crib is consistent with some
+ *  plugboard.
+ *
+ *  The crib and ciphertext form a "menu": letter crib[j] is joined to
+ *  letter cipher[j] by an edge labelled with step j.  If the plugboard
+ *  takes a to x and there is an edge from a to b at step j, then it
+ *  takes b to S_j(x), where S_j is the machine without its plugboard
+ *  after j + 1 steps; since the plugboard is its own inverse, it also
+ *  takes x to a.  At each position, the bombe assumes a value for the
+ *  most connected menu letter (the "test letter") and follows these
+ *  implications.  When they give the test letter every value, the
+ *  position is impossible; otherwise each assumed value that implies no
+ *  other value for the test letter gives a "stop".
+ *  @author Manaal Siddiqui
+ */
+class Bombe {
+
+    /** About how often search reports progress, in milliseconds. */
+    static final long PROGRESS_INTERVAL = 1000;
+
+    /** Receives the results of a search. */
+    interface Listener {
+        /** Called with each STOP found. */
+        void stop(Stop stop);
+
+        /** Called as the search goes on, and once at its end, with the
+         *  number of POSITIONS tried in the NANOS nanoseconds since it
+         *  began. */
+        void progress(long positions, long nanos);
+    }
+
+    /** A rotor order, starting setting and partial plugboard at which
+     *  the crib is consistent. */
+    static final class Stop {
+
+        /** A stop with the rotors named ROTORS, rotor setting SETTING and
+         *  plugboard cycles STECKERS. */
+        Stop(String[] rotors, String setting, String steckers) {
+            _rotors = rotors;
+            _setting = setting;
+            _steckers = steckers;
+        }
+
+        /** Return the names of my rotors, the reflector first. */
+        String[] rotors() {
+            return _rotors.clone();
+        }
+
+        /** Return my rotor setting. */
+        String setting() {
+            return _setting;
+        }
+
+        /** Return the plugboard pairs implied by the crib at me, as
+         *  cycles.  Letters that the menu does not connect to the test
+         *  letter are omitted. */
+        String steckers() {
+            return _steckers;
+        }
+
+        /** Return me as a setting line for Main. */
+        @Override
+        public String toString() {
+            return "* " + String.join(" ", _rotors) + " " + _setting
+                + (_steckers.isEmpty() ? "" : " " + _steckers);
+        }
+
+        /** Names of my rotors. */
+        private final String[] _rotors;
+        /** My rotor setting. */
+        private final String _setting;
+        /** My plugboard cycles. */
+        private final String _steckers;
+    }
+
+    /** A bombe for machines built to SPEC, looking for settings at which
+     *  the letters CRIB (as alphabet indices) encipher to the first
+     *  letters of CIPHER. */
+    Bombe(MachineSpec spec, int[] cipher, int[] crib) {
+        if (crib.length == 0) {
+            throw error("empty crib");
+        } else if (crib.length > cipher.length) {
+            throw error("crib is longer than the ciphertext");
+        } else if (spec.numRotors() < 2) {
+            throw error("bombe needs at least one rotor after the reflector");
+        }
+        _spec = spec;
+        _size = spec.alphabet().size();
+        _steps = crib.length;
+        _forward = spec.forwardWiring();
+        _inverse = spec.inverseWiring();
+        _menuStart = new int[_size + 1];
+        for (int j = 0; j < _steps; j++) {
+            _menuStart[crib[j] + 1] += 1;
+            if (cipher[j] != crib[j]) {
+                _menuStart[cipher[j] + 1] += 1;
+            }
+        }
+        int test = 0;
+        for (int a = 0; a < _size; a++) {
+            if (_menuStart[a + 1] > _menuStart[test + 1]) {
+                test = a;
+            }
+        }
+        _test = test;
+        for (int a = 0; a < _size; a++) {
+            _menuStart[a + 1] += _menuStart[a];
+        }
+        _menuTo = new int[_menuStart[_size]];
+        _menuStep = new int[_menuTo.length];
+        int[] fill = _menuStart.clone();
+        for (int j = 0; j < _steps; j++) {
+            int a = crib[j], b = cipher[j];
+            _menuTo[fill[a]] = b;
+            _menuStep[fill[a]++] = j;
+            if (a != b) {
+                _menuTo[fill[b]] = a;
+                _menuStep[fill[b]++] = j;
+            }
+        }
+        _orders = spec.rotorOrders();
+    }
+
+    /** Return the number of rotor orders searched. */
+    int orders() {
+        return _orders.length;
+    }
+
+    /** Return the number of positions search tries. */
+    long positions() {
+        long result = _orders.length;
+        for (int i = 1; i < _spec.numRotors(); i++) {
+            result *= _size;
+        }
+        return result;
+    }
+
+    /** Try every position on THREADS threads, passing each stop to
+     *  LISTENER and reporting progress to it about every
+     *  PROGRESS_INTERVAL milliseconds.  All calls to LISTENER are made
+     *  from the calling thread.  Returns the number of positions
+     *  tried. */
+    long search(int threads, Listener listener) {
+        _tried.set(0);
+        long start = System.nanoTime();
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try {
+            ForkJoinTask<?> task =
+                pool.submit(new SearchTask(0, _orders.length * _size));
+            while (true) {
+                try {
+                    task.get(PROGRESS_INTERVAL, TimeUnit.MILLISECONDS);
+                    break;
+                } catch (TimeoutException excp) {
+                    deliver(listener);
+                    listener.progress(_tried.get(),
+                                      System.nanoTime() - start);
+                }
+            }
+        } catch (ExecutionException excp) {
+            if (excp.getCause() instanceof EnigmaException) {
+                throw (EnigmaException) excp.getCause();
+            }
+            throw error("search failed: %s", excp.getCause());
+        } catch (InterruptedException excp) {
+            throw error("interrupted");
+        } finally {
+            pool.shutdownNow();
+        }
+        deliver(listener);
+        listener.progress(_tried.get(), System.nanoTime() - start);
+        return _tried.get();
+    }
+
+    /** Pass the stops found so far to LISTENER. */
+    private void deliver(Listener listener) {
+        Stop stop;
+        while ((stop = _stops.poll()) != null) {
+            listener.stop(stop);
+        }
+    }
+
+    /** Tries work items LO .. HI-1.  Item q covers rotor order
+     *  q / size with the rotor in slot 1 at setting q % size. */
+    private class SearchTask extends RecursiveAction {
+
+        /** A task for items LO .. HI-1. */
+        SearchTask(int lo, int hi) {
+            _lo = lo;
+            _hi = hi;
+        }
+
+        @Override
+        protected void compute() {
+            if (_hi - _lo == 1) {
+                _searchers.get().search(_lo);
+            } else {
+                int mid = (_lo + _hi) >>> 1;
+                invokeAll(new SearchTask(_lo, mid), new SearchTask(mid, _hi));
+            }
+        }
+
+        /** Bounds of my items. */
+        private final int _lo, _hi;
+    }
+
+    /** Number of cores each searching thread keeps. */
+    static final int CORES = 64;
+
+    /** The working storage of one thread's search, which it keeps from
+     *  one work item to the next. */
+    private class Searcher {
+
+        /** Number of positions tried between updates of _tried. */
+        static final int TALLY = 1 << 10;
+
+        /** Try every position of work item ITEM (see SearchTask). */
+        void search(int item) {
+            int n = _spec.numRotors();
+            _slots = _orders[item / _size];
+            int[] posns = new int[n];
+            posns[1] = item % _size;
+            int tally = 0;
+            do {
+                tryPosition(posns);
+                tally += 1;
+                if (tally == TALLY) {
+                    _tried.addAndGet(tally);
+                    tally = 0;
+                }
+            } while (next(posns));
+            _tried.addAndGet(tally);
+        }
+
+        /** Advance the settings of slots 2 and after in POSNS as an
+         *  odometer, the rightmost slot fastest.  Returns false once they
+         *  wrap around to all 0. */
+        private boolean next(int[] posns) {
+            for (int i = posns.length - 1; i >= 2; i--) {
+                posns[i] += 1;
+                if (posns[i] < _size) {
+                    return true;
+                }
+                posns[i] = 0;
+            }
+            return false;
+        }
+
+        /** Check whether starting settings POSNS are a stop, and queue
+         *  a stop for each value of the test letter that is consistent
+         *  there.  The values that one assumed value implies for the test
+         *  letter form a class; only a class of one can be consistent, so
+         *  each class is lit once, and the position is rejected as soon
+         *  as one class holds every value. */
+        private void tryPosition(int[] posns) {
+            int n = posns.length;
+            int[] p = posns.clone();
+            for (int j = 0; j < _steps; j++) {
+                moveRotors(p);
+                _stepFast[j] = p[n - 1];
+                _stepCore[j] = _cores.get(_slots, p);
+            }
+            _seenGen += 1;
+            for (int value = 0; value < _size; value++) {
+                if (_seen[value] == _seenGen) {
+                    continue;
+                }
+                int lit = light(_test, value);
+                if (lit == _size) {
+                    return;
+                }
+                for (int y = 0; y < _size; y++) {
+                    if (_lit[_test * _size + y] == _litGen) {
+                        _seen[y] = _seenGen;
+                    }
+                }
+                if (lit == 1) {
+                    String steckers = steckers();
+                    if (steckers != null) {
+                        _stops.add(stop(posns, steckers));
+                    }
+                }
+            }
+        }
+
+        /** Advance settings P as Session.moveRotors does, with my rotor
+         *  order. */
+        private void moveRotors(int[] p) {
+            int n = p.length;
+            int pawls = _spec.numPawls();
+            for (int i = n - pawls; i < n; i++) {
+                int r = _slots[i];
+                if (Stepping.moves(i, n, pawls, _spec.rotates(r),
+                                   _spec.atNotch(r, p[i]),
+                                   i < n - 1
+                                   && _spec.atNotch(_slots[i + 1], p[i + 1]))) {
+                    p[i] = p[i] + 1 == _size ? 0 : p[i] + 1;
+                }
+            }
+        }
+
+        /** Assume that the plugboard takes A to Y and mark everything
+         *  that follows.  Returns the number of values then marked for
+         *  the test letter; this stops at size once all are. */
+        private int light(int a, int y) {
+            _litGen += 1;
+            _count = 0;
+            _top = 0;
+            mark(a, y);
+            while (_top > 0 && _count < _size) {
+                int node = _stack[--_top];
+                int b = node / _size, x = node % _size;
+                for (int e = _menuStart[b]; e < _menuStart[b + 1]; e++) {
+                    mark(_menuTo[e], scramble(_menuStep[e], x));
+                }
+                mark(x, b);
+            }
+            return _count;
+        }
+
+        /** Mark that the plugboard takes A to Y, if not already marked. */
+        private void mark(int a, int y) {
+            int node = a * _size + y;
+            if (_lit[node] != _litGen) {
+                _lit[node] = _litGen;
+                _stack[_top++] = node;
+                if (a == _test) {
+                    _count += 1;
+                }
+            }
+        }
+
+        /** Return the image of C under the machine without its plugboard
+         *  after J + 1 steps. */
+        private int scramble(int j, int c) {
+            int width = 2 * _size;
+            int fast = _slots[_slots.length - 1] * width;
+            int s = _stepFast[j];
+            int r = _forward[fast + c + s] - s;
+            r = _stepCore[j][r + (_size & (r >> 31))] + s;
+            r = _inverse[fast + r] - s;
+            return r + (_size & (r >> 31));
+        }
+
+        /** Return the plugboard cycles marked by the last call to light,
+         *  or null if some letter is marked with two values. */
+        private String steckers() {
+            StringBuilder result = new StringBuilder();
+            Alphabet alpha = _spec.alphabet();
+            for (int a = 0; a < _size; a++) {
+                int value = -1;
+                for (int y = 0; y < _size; y++) {
+                    if (_lit[a * _size + y] == _litGen) {
+                        if (value != -1) {
+                            return null;
+                        }
+                        value = y;
+                    }
+                }
+                if (value > a) {
+                    if (result.length() > 0) {
+                        result.append(' ');
+                    }
+                    result.append('(')
+                        .appendCodePoint(alpha.toCodePoint(a))
+                        .appendCodePoint(alpha.toCodePoint(value))
+                        .append(')');
+                }
+            }
+            return result.toString();
+        }
+
+        /** Return the stop at starting settings POSNS with plugboard
+         *  cycles STECKERS. */
+        private Stop stop(int[] posns, String steckers) {
+            Alphabet alpha = _spec.alphabet();
+            String[] names = new String[_slots.length];
+            StringBuilder setting = new StringBuilder();
+            for (int i = 0; i < _slots.length; i++) {
+                names[i] = _spec.name(_slots[i]);
+                if (i > 0) {
+                    setting.appendCodePoint(alpha.toCodePoint(posns[i]));
+                }
+            }
+            return new Stop(names, setting.toString(), steckers);
+        }
+
+        /** The rotor order being searched. */
+        private int[] _slots;
+        /** _stepFast[j] is the setting of the rightmost rotor after
+         *  j + 1 steps from the current position. */
+        private final int[] _stepFast = new int[_steps];
+        /** _stepCore[j] is the core (see CoreCache) after j + 1 steps
+         *  from the current position. */
+        private final int[][] _stepCore = new int[_steps][];
+        /** Recently used cores. */
+        private final CoreCache _cores = new CoreCache(_spec, CORES);
+        /** _lit[a * size + y] == _litGen iff it is marked that the
+         *  plugboard takes a to y. */
+        private final int[] _lit = new int[_size * _size];
+        /** Current stamp for _lit. */
+        private int _litGen;
+        /** Marked pairs whose consequences are yet to be followed. */
+        private final int[] _stack = new int[_size * _size];
+        /** Number of entries in _stack. */
+        private int _top;
+        /** Number of values marked for the test letter. */
+        private int _count;
+        /** _seen[y] == _seenGen iff a call to light at the current
+         *  position has marked y for the test letter. */
+        private final int[] _seen = new int[_size];
+        /** Current stamp for _seen. */
+        private int _seenGen;
+    }
+
+    /** The specification of the machines attacked. */
+    private final MachineSpec _spec;
+    /** Size of the alphabet. */
+    private final int _size;
+    /** Number of letters in the crib. */
+    private final int _steps;
+    /** Rotor wirings, as for MachineSpec.forwardWiring. */
+    private final int[] _forward;
+    /** Inverse rotor wirings, as for MachineSpec.inverseWiring. */
+    private final int[] _inverse;
+    /** The edges of the menu from letter a are those at indices
+     *  _menuStart[a] .. _menuStart[a + 1] - 1 of _menuTo and _menuStep. */
+    private final int[] _menuStart;
+    /** Other ends of the menu edges. */
+    private final int[] _menuTo;
+    /** Steps of the menu edges. */
+    private final int[] _menuStep;
+    /** The test letter. */
+    private final int _test;
+    /** The rotor orders tried, as slot contents for Session. */
+    private final int[][] _orders;
+    /** Number of positions tried so far by the current search. */
+    private final AtomicLong _tried = new AtomicLong();
+    /** The Searcher of each thread. */
+    private final ThreadLocal<Searcher> _searchers =
+        ThreadLocal.withInitial(Searcher::new);
+    /** Stops found but not yet passed to the listener. */
+    private final ConcurrentLinkedQueue<Stop> _stops =
+        new ConcurrentLinkedQueue<>();
+}
@@ -0,0 +1,106 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+import static enigma.TestMachines.*;
+
+import java.util.ArrayList;
+import java.util.Random;
+
+/** The suite of all JUnit tests for the Bombe class.
+ *  @author Manaal Siddiqui
+ */
+public class BombeTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** The standard upper-case alphabet. */
+    private Alphabet alpha = new Alphabet();
+
+    /** Return the letters of TEXT as alphabet indices. */
+    private int[] indices(String text) {
+        int[] result = new int[text.length()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = alpha.toInt(text.charAt(i));
+        }
+        return result;
+    }
+
+    /** Collects the stops of a search. */
+    private static class Stops implements Bombe.Listener {
+        @Override
+        public void stop(Bombe.Stop stop) {
+            found.add(stop.toString());
+        }
+
+        @Override
+        public void progress(long positions, long nanos) {
+            last = positions;
+        }
+
+        /** The stops, as setting lines. */
+        private ArrayList<String> found = new ArrayList<>();
+        /** The last number of positions reported. */
+        private long last;
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void testFindsKey() {
+        MachineSpec spec = small();
+        Session s = new Session(spec);
+        s.insertRotors(new String[] {"B", "IV", "I"});
+        s.setRotors("KP");
+        s.setPlugboard(new Permutation("(AT) (EW) (HR) (NO)", alpha));
+        String crib = "WETTERVORHERSAGEBISKAYA";
+        String cipher = s.convert(crib + "NICHTS");
+        Bombe bombe = new Bombe(spec, indices(cipher), indices(crib));
+        assertEquals(6, bombe.orders());
+        assertEquals(6 * 26 * 26, bombe.positions());
+        Stops stops = new Stops();
+        assertEquals(bombe.positions(), bombe.search(2, stops));
+        assertEquals(bombe.positions(), stops.last);
+        assertTrue(stops.found.contains("* B IV I KP (AT) (EW) (HR) (NO)"));
+    }
+
+    @Test
+    public void testShortCribs() {
+        MachineSpec spec = small();
+        String[][] orders = {
+            {"B", "I", "III"}, {"B", "III", "IV"}, {"B", "IV", "I"},
+        };
+        Random random = new Random(18);
+        for (int trial = 0; trial < 6; trial += 1) {
+            String[] order = orders[trial % orders.length];
+            String setting = "" + (char) ('A' + random.nextInt(26))
+                + (char) ('A' + random.nextInt(26));
+            Session s = new Session(spec);
+            s.insertRotors(order);
+            s.setRotors(setting);
+            s.setPlugboard(new Permutation("(AT) (EW) (HR) (NO)", alpha));
+            String crib = "ANGRIFFX";
+            String cipher = s.convert(crib + "MORGEN");
+            Bombe bombe = new Bombe(spec, indices(cipher), indices(crib));
+            Stops stops = new Stops();
+            bombe.search(2, stops);
+            String key = "* " + String.join(" ", order) + " " + setting;
+            boolean found = false;
+            for (String stop : stops.found) {
+                found |= stop.startsWith(key);
+            }
+            assertTrue("missed " + key, found);
+        }
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void testCribTooLong() {
+        new Bombe(small(), indices("ABC"), indices("ABCD"));
+    }
+}
@@ -0,0 +1,110 @@
+package enigma;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+
+/** A Writer that encodes characters straight into a direct byte buffer
+ *  and writes that buffer to a channel whenever it fills, so that the
+ *  operating system can take the bytes without a further copy.
+ *  @author Manaal Siddiqui
+ */
+class ChannelWriter extends Writer {
+
+    /** Default size of my byte buffer. */
+    static final int BLOCK = 1 << 20;
+
+    /** A Writer sending characters encoded with CHARSET to CHANNEL. */
+    ChannelWriter(WritableByteChannel channel, Charset charset) {
+        _channel = channel;
+        _encoder = charset.newEncoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        _bytes = ByteBuffer.allocateDirect(BLOCK);
+    }
+
+    @Override
+    public void write(char[] cbuf, int off, int len) throws IOException {
+        if (len == 0) {
+            return;
+        }
+        if (_carry != 0) {
+            char carried = _carry;
+            _carry = 0;
+            encode(CharBuffer.wrap(new char[] { carried, cbuf[off] }));
+            off += 1;
+            len -= 1;
+        }
+        encode(CharBuffer.wrap(cbuf, off, len));
+    }
+
+    /** Encode CHARS into _bytes, draining as needed.  A trailing high
+     *  surrogate is saved in _carry to be joined with the next write. */
+    private void encode(CharBuffer chars) throws IOException {
+        while (true) {
+            CoderResult result = _encoder.encode(chars, _bytes, false);
+            if (result.isOverflow()) {
+                drain();
+            } else if (result.isUnderflow()) {
+                if (chars.hasRemaining()) {
+                    _carry = chars.get();
+                }
+                return;
+            } else {
+                result.throwException();
+            }
+        }
+    }
+
+    @Override
+    public void flush() throws IOException {
+        drain();
+    }
+
+    @Override
+    public void close() throws IOException {
+        CharBuffer rest = CharBuffer.allocate(_carry == 0 ? 0 : 1);
+        if (_carry != 0) {
+            rest.put(0, _carry);
+            _carry = 0;
+        }
+        while (_encoder.encode(rest, _bytes, true).isOverflow()) {
+            drain();
+        }
+        while (_encoder.flush(_bytes).isOverflow()) {
+            drain();
+        }
+        drain();
+        _channel.close();
+    }
+
+    /** Write out everything in _bytes. */
+    private void drain() throws IOException {
+        _bytes.flip();
+        if (Metrics.ON) {
+            Metrics.BYTES_OUT.add(_bytes.remaining());
+        }
+        while (_bytes.hasRemaining()) {
+            _channel.write(_bytes);
+        }
+        _bytes.clear();
+    }
+
+    /** Destination of my bytes. */
+    private final WritableByteChannel _channel;
+
+    /** Converts characters to bytes. */
+    private final CharsetEncoder _encoder;
+
+    /** Encoded bytes not yet written. */
+    private final ByteBuffer _bytes;
+
+    /** A high surrogate left over from the last write, or 0. */
+    private char _carry;
+}
@@ -0,0 +1,86 @@
+package enigma;
+
+import java.nio.CharBuffer;
+import java.util.Arrays;
+import java.util.function.IntUnaryOperator;
+
+/** Conversion of text in alphabets with supplementary characters, which
+ *  must be handled a code point at a time rather than a char at a time.
+ *  The letter-by-letter conversion itself is supplied by a Machine or
+ *  Session, as an operator on alphabet indices.
+ *  @author Manaal Siddiqui
+ */
+final class CodePoints {
+
+    /** Not instantiable. */
+    private CodePoints() {
+    }
+
+    /** Convert the LEN chars of IN starting at OFF, skipping whitespace,
+     *  into OUT starting at OUTOFF, applying CONVERT to the alphabet index
+     *  of each character of ALPHA.  Returns the number of chars stored,
+     *  which may be up to twice the number read, so OUT needs room for
+     *  2 * LEN chars.  IN and OUT may be the same array. */
+    static int convert(Alphabet alpha, IntUnaryOperator convert,
+                       char[] in, int off, int len, char[] out,
+                       int outOff) {
+        if (in == out) {
+            in = Arrays.copyOfRange(in, off, off + len);
+            off = 0;
+        }
+        int k = outOff;
+        for (int i = off, end = off + len; i < end;) {
+            int cp = Character.codePointAt(in, i, end);
+            i += Character.charCount(cp);
+            if (Character.isWhitespace(cp)) {
+                continue;
+            }
+            int result = alpha.toCodePoint(
+                convert.applyAsInt(alpha.codePointToInt(cp)));
+            k += Character.toChars(result, out, k);
+        }
+        return k - outOff;
+    }
+
+    /** Convert chars from IN into OUT as for convert(char[], ...), until
+     *  IN is exhausted or OUT has room for less than one more character.
+     *  A high surrogate at the end of IN is left there, to be completed by
+     *  the next call.  Both buffers' positions are advanced past the chars
+     *  consumed and produced.  Returns the number of chars put into
+     *  OUT. */
+    static int convert(Alphabet alpha, IntUnaryOperator convert,
+                       CharBuffer in, CharBuffer out) {
+        int total = 0;
+        while (in.hasRemaining() && out.remaining() >= 2) {
+            int p = in.position();
+            char ch = in.get(p);
+            int cp = ch;
+            if (Character.isHighSurrogate(ch)) {
+                if (p + 1 == in.limit()) {
+                    break;
+                } else if (Character.isLowSurrogate(in.get(p + 1))) {
+                    cp = Character.toCodePoint(ch, in.get(p + 1));
+                }
+            }
+            in.position(p + Character.charCount(cp));
+            if (Character.isWhitespace(cp)) {
+                continue;
+            }
+            int result = alpha.toCodePoint(
+                convert.applyAsInt(alpha.codePointToInt(cp)));
+            out.put(Character.toChars(result));
+            total += Character.charCount(result);
+        }
+        return total;
+    }
+
+    /** Return the number of characters (code points) in S. */
+    static int length(String s) {
+        return s.codePointCount(0, s.length());
+    }
+
+    /** Return an array of the code points of S. */
+    static int[] of(String s) {
+        return s.codePoints().toArray();
+    }
+}
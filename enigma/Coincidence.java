@@ -0,0 +1,80 @@
+package enigma;
+
+import java.util.Arrays;
+
+/** Scores a text by its index of coincidence: the chance that two of
+ *  its letters, drawn at random without replacement, are the same.
+ *  Plaintext has a markedly higher index than random text, whatever
+ *  its plugboard.
+ *
+ *  Its bound is weak.  Knowing nothing of the letters still to come, it
+ *  must allow that they all repeat the commonest letter so far, and no
+ *  smaller bound is safe.  That bound falls below a good score only
+ *  near the end of a decrypt, in about its last tenth, so KeySearch
+ *  prunes little with this scorer.  Ngrams, whose bound grows by at
+ *  most the likeliest n-gram per letter, prunes much earlier.
+ *  @author Manaal Siddiqui
+ */
+class Coincidence implements Scorer {
+
+    /** A scorer for texts in an alphabet of SIZE letters. */
+    Coincidence(int size) {
+        _counts = new int[size];
+    }
+
+    @Override
+    public void reset() {
+        Arrays.fill(_counts, 0);
+        _pairs = 0;
+        _length = 0;
+        _most = 0;
+    }
+
+    @Override
+    public void add(int c) {
+        int k = _counts[c];
+        _pairs += k;
+        _counts[c] = k + 1;
+        _length += 1;
+        _most = Math.max(_most, k + 1);
+    }
+
+    @Override
+    public double score() {
+        return index(_pairs, _length);
+    }
+
+    /** The highest index comes from adding all REMAINING letters to
+     *  the commonest letter so far. */
+    @Override
+    public double bound(int remaining) {
+        long r = remaining;
+        long more = r * _most + r * (r - 1) / 2;
+        return index(_pairs + more, _length + r);
+    }
+
+    @Override
+    public Scorer copy() {
+        return new Coincidence(_counts.length);
+    }
+
+    @Override
+    public String describe() {
+        return "Coincidence" + _counts.length;
+    }
+
+    /** Return the index of coincidence of a text of LENGTH letters with
+     *  PAIRS pairs of equal letters. */
+    private static double index(long pairs, long length) {
+        return length < 2 ? 0 : 2.0 * pairs / (length * (length - 1));
+    }
+
+    /** _counts[c] is the number of times letter c occurs. */
+    private final int[] _counts;
+    /** Number of pairs of equal letters. */
+    private long _pairs;
+    /** Number of letters. */
+    private int _length;
+    /** Largest of _counts. */
+    private int _most;
+}
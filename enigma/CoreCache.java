@@ -0,0 +1,94 @@
+package enigma;
+
+/** Tables of the "core" of a machine: the permutation made by all its
+ *  rotors but the rightmost, going left through them, back from the
+ *  reflector, and right again.  During a search, the core changes
+ *  only when a rotor other than the rightmost moves, so a converted
+ *  letter costs just two lookups in the rightmost rotor and one in the
+ *  core.  A CoreCache is a direct-mapped table: each rotor order and
+ *  set of shifts hashes to one entry, and a core that hashes to an
+ *  occupied entry replaces whatever is there, however recently that was
+ *  used.  That keeps a lookup to one probe and no bookkeeping.  It is
+ *  meant to be used by one thread.
+ *  @author Manaal Siddiqui
+ */
+final class CoreCache {
+
+    /** A cache of CAPACITY entries, each holding at most one core of
+     *  machines built to SPEC. */
+    CoreCache(MachineSpec spec, int capacity) {
+        _spec = spec;
+        _size = spec.alphabet().size();
+        _cores = new int[capacity][];
+        _keys = new int[capacity][];
+    }
+
+    /** Return the core, as a table, of the rotors SLOTS[0 .. n-2] (as
+     *  indices in my spec) where slot i is turned by SHIFTS[i] (its
+     *  setting less its ring setting, modulo the alphabet size), n being
+     *  the length of SLOTS.  The result must not be modified.  A core
+     *  that is evicted is replaced by a new table, so results stay
+     *  valid however many calls follow. */
+    int[] get(int[] slots, int[] shifts) {
+        int n = slots.length - 1;
+        int h = 0;
+        for (int i = 0; i < n; i++) {
+            h = (h * 31 + slots[i]) * 31 + shifts[i];
+        }
+        int k = (h & Integer.MAX_VALUE) % _cores.length;
+        int[] key = _keys[k];
+        boolean hit = key != null;
+        for (int i = 0; i < n && hit; i++) {
+            hit = key[i] == slots[i] && key[n + i] == shifts[i];
+        }
+        if (hit) {
+            return _cores[k];
+        }
+        if (key == null) {
+            key = _keys[k] = new int[2 * n];
+        }
+        for (int i = 0; i < n; i++) {
+            key[i] = slots[i];
+            key[n + i] = shifts[i];
+        }
+        int[] table = new int[_size];
+        fill(_spec, table, slots, shifts, n);
+        _cores[k] = table;
+        return table;
+    }
+
+    /** Fill TABLE with the core of the first N rotors of SLOTS, as
+     *  indices in SPEC, turned by SHIFTS. */
+    static void fill(MachineSpec spec, int[] table, int[] slots,
+                     int[] shifts, int n) {
+        int[] forward = spec.forwardWiring();
+        int[] inverse = spec.inverseWiring();
+        int size = table.length;
+        int width = 2 * size;
+        for (int c = 0; c < size; c++) {
+            int result = c;
+            for (int i = n - 1; i >= 0; i--) {
+                int r = forward[slots[i] * width + result + shifts[i]]
+                    - shifts[i];
+                result = r + (size & (r >> 31));
+            }
+            for (int i = 1; i < n; i++) {
+                int r = inverse[slots[i] * width + result + shifts[i]]
+                    - shifts[i];
+                result = r + (size & (r >> 31));
+            }
+            table[c] = result;
+        }
+    }
+
+    /** The specification of my machines. */
+    private final MachineSpec _spec;
+    /** Size of the alphabet. */
+    private final int _size;
+    /** The cached cores, each for the rotors and shifts in _keys at the
+     *  same index. */
+    private final int[][] _cores;
+    /** _keys[k] holds the n-1 rotors and then the n-1 shifts of
+     *  _cores[k], or is null if _cores[k] is unused. */
+    private final int[][] _keys;
+}
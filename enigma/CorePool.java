@@ -0,0 +1,132 @@
+package enigma;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.SoftReference;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+
+/** Cores (see CoreCache) of machines built to one MachineSpec, shared by
+ *  every machine and thread using that spec.  With a given rotor order,
+ *  a message passes through few distinct cores, since the core changes
+ *  only when a rotor other than the rightmost moves, and messages sent
+ *  with the same rotors and rings pass through the same ones.  So
+ *  converting a letter costs a lookup on each side of the rightmost
+ *  rotor and one in a pooled core, and building a core is paid for once
+ *  however many messages and threads use it.
+ *
+ *  Cores are held through soft references, so that the garbage
+ *  collector can reclaim them when memory runs short, and the pool
+ *  holds at most its capacity, beyond which it drops arbitrary cores.
+ *  @author Manaal Siddiqui
+ */
+final class CorePool {
+
+    /** Most cores a pool holds by default. */
+    static final int CAPACITY = 1 << 14;
+
+    /** A pool of up to CAPACITY cores of machines built to SPEC. */
+    CorePool(MachineSpec spec, int capacity) {
+        _spec = spec;
+        _capacity = capacity;
+    }
+
+    /** Return the core of the rotors SLOTS[0 .. n-2] turned by SHIFTS, as
+     *  for CoreCache.get.  The result must not be modified, and stays
+     *  valid however it is evicted. */
+    int[] get(int[] slots, int[] shifts) {
+        int n = slots.length - 1;
+        Key key = new Key(slots, shifts, n);
+        Core core = _cores.get(key);
+        int[] table = core == null ? null : core.get();
+        if (Metrics.ON) {
+            (table == null ? Metrics.CORE_MISSES : Metrics.CORE_HITS).add(1);
+        }
+        if (table == null) {
+            table = new int[_spec.alphabet().size()];
+            CoreCache.fill(_spec, table, slots, shifts, n);
+            _cores.put(key, new Core(key, table, _cleared));
+            trim(key);
+        }
+        return table;
+    }
+
+    /** Return the number of cores I hold, some of which may have been
+     *  reclaimed. */
+    int size() {
+        return _cores.size();
+    }
+
+    /** Remove the cores that have been reclaimed and, if I still hold
+     *  more than my capacity, enough others, apart from the one for
+     *  NEWEST, to bring me back to three quarters of it. */
+    private void trim(Key newest) {
+        for (Reference<?> r = _cleared.poll(); r != null;
+             r = _cleared.poll()) {
+            Core core = (Core) r;
+            _cores.remove(core._key, core);
+        }
+        if (_cores.size() > _capacity) {
+            Iterator<Key> keys = _cores.keySet().iterator();
+            while (_cores.size() > _capacity * 3 / 4 && keys.hasNext()) {
+                if (!keys.next().equals(newest)) {
+                    keys.remove();
+                }
+            }
+        }
+    }
+
+    /** The rotors and shifts identifying a core. */
+    private static final class Key {
+
+        /** The key for the first N of SLOTS and SHIFTS. */
+        Key(int[] slots, int[] shifts, int n) {
+            _parts = new int[2 * n];
+            System.arraycopy(slots, 0, _parts, 0, n);
+            System.arraycopy(shifts, 0, _parts, n, n);
+            _hash = Arrays.hashCode(_parts);
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            return obj instanceof Key
+                && Arrays.equals(_parts, ((Key) obj)._parts);
+        }
+
+        @Override
+        public int hashCode() {
+            return _hash;
+        }
+
+        /** The rotors, then the shifts. */
+        private final int[] _parts;
+        /** Hash code of _parts. */
+        private final int _hash;
+    }
+
+    /** A soft reference to a core, which remembers its key so that it
+     *  can be removed once the core is reclaimed. */
+    private static final class Core extends SoftReference<int[]> {
+
+        /** A reference to TABLE, the core for KEY, that is put on QUEUE
+         *  when TABLE is reclaimed. */
+        Core(Key key, int[] table, ReferenceQueue<int[]> queue) {
+            super(table, queue);
+            _key = key;
+        }
+
+        /** The key of my core. */
+        private final Key _key;
+    }
+
+    /** The specification of my machines. */
+    private final MachineSpec _spec;
+    /** Most cores I hold. */
+    private final int _capacity;
+    /** My cores, by key. */
+    private final ConcurrentHashMap<Key, Core> _cores =
+        new ConcurrentHashMap<>();
+    /** References to cores that have been reclaimed. */
+    private final ReferenceQueue<int[]> _cleared = new ReferenceQueue<>();
+}
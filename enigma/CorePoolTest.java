@@ -0,0 +1,59 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+import static enigma.TestMachines.*;
+
+
+/** The suite of all JUnit tests for the CorePool class.
+ *  @author Manaal Siddiqui
+ */
+public class CorePoolTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** The standard upper-case alphabet. */
+    private Alphabet alpha = new Alphabet();
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void testMatchesCoreCache() {
+        MachineSpec spec = naval();
+        CorePool pool = new CorePool(spec, 100);
+        CoreCache cache = new CoreCache(spec, 4);
+        int[] slots = {4, 3, 1, 2, 0};
+        int[] shifts = new int[5];
+        for (int k = 0; k < 300; k++) {
+            shifts[1] = k % 7;
+            shifts[2] = (k * 5) % 26;
+            shifts[3] = k % 26;
+            int[] core = pool.get(slots, shifts);
+            assertArrayEquals(cache.get(slots, shifts), core);
+            assertSame(core, pool.get(slots, shifts));
+            assertTrue(pool.size() <= 100);
+        }
+    }
+
+    @Test
+    public void testSharedByMachines() {
+        MachineSpec spec = naval();
+        Session a = new Session(spec);
+        a.insertRotors(new String[] {"B", "Beta", "III", "IV", "I"});
+        a.setRotors("AXLE");
+        a.setPlugboard(new Permutation("(AQ) (EP)", alpha));
+        Session b = a.copy();
+        String msg = "FROMHISSHOULDERHIAWATHATOOKTHECAMERAOFROSEWOOD";
+        String expected = a.convert(msg);
+        int size = spec.cores().size();
+        assertTrue(size > 0);
+        assertEquals(expected, b.convert(msg));
+        assertEquals(size, spec.cores().size());
+    }
+}
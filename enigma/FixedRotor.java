@@ -17,6 +17,11 @@ class FixedRotor extends Rotor {
         return false;
     }
 
+    @Override
+    Rotor copy() {
+        return copyStateTo(new FixedRotor(name(), permutation()));
+    }
+
     /** fixed rotors can not advance so do nothing. */
     @Override
     void advance() {
@@ -0,0 +1,161 @@
+package enigma;
+
+import java.io.IOException;
+import java.io.Writer;
+
+import static enigma.EnigmaException.*;
+
+/** Writes converted messages in groups of five letters, buffering output
+ *  in one reusable block that is handed to the underlying Writer only
+ *  when full (or on flush), so output costs no allocation per group.
+ *  @author Manaal Siddiqui
+ */
+class GroupWriter {
+
+    /** Number of letters in a full group. */
+    static final int GROUP = 5;
+
+    /** Default size of my output block, in characters. */
+    static final int BLOCK = 1 << 16;
+
+    /** A GroupWriter sending its output to OUT in blocks of BLOCK
+     *  characters. */
+    GroupWriter(Writer out) {
+        this(out, BLOCK);
+    }
+
+    /** A GroupWriter sending its output to OUT in blocks of SIZE
+     *  characters. */
+    GroupWriter(Writer out, int size) {
+        this(out, size, true);
+    }
+
+    /** A GroupWriter sending its output to OUT in blocks of SIZE
+     *  characters, which are counted as output (see Metrics) iff
+     *  MEASURED.  Output to an intermediate buffer is not. */
+    GroupWriter(Writer out, int size, boolean measured) {
+        _out = out;
+        _buf = new char[Math.max(size, GROUP + 1 + NEWLINE.length())];
+        _measured = measured;
+    }
+
+    /** Append the LEN letters of LETTERS starting at OFF to the current
+     *  message line, inserting a blank between groups of five.  A
+     *  supplementary letter (a surrogate pair) counts as one letter. */
+    void write(char[] letters, int off, int len) {
+        for (int i = off; i < off + len; i++) {
+            if (_pos + 2 > _buf.length) {
+                drain();
+            }
+            if (Character.isLowSurrogate(letters[i])) {
+                _buf[_pos++] = letters[i];
+                continue;
+            }
+            if (_count > 0 && _count % GROUP == 0) {
+                _buf[_pos++] = ' ';
+            }
+            _buf[_pos++] = letters[i];
+            _count += 1;
+        }
+    }
+
+    /** Append the letters of MSG to the current message line. */
+    void write(String msg) {
+        char[] letters = msg.toCharArray();
+        write(letters, 0, letters.length);
+    }
+
+    /** End the current message line.  Nothing is written if the line
+     *  has no letters. */
+    void endLine() {
+        if (_count > 0) {
+            newline();
+            if (Metrics.ON) {
+                Metrics.MESSAGES.add(1);
+            }
+        }
+    }
+
+    /** Write a line terminator, ending any current message line. */
+    void newline() {
+        if (_pos + NEWLINE.length() > _buf.length) {
+            drain();
+        }
+        NEWLINE.getChars(0, NEWLINE.length(), _buf, _pos);
+        _pos += NEWLINE.length();
+        _count = 0;
+    }
+
+    /** Write the LEN characters of TEXT starting at OFF exactly as they
+     *  are, for output that has already been laid out. */
+    void verbatim(char[] text, int off, int len) {
+        if (_pos + len > _buf.length) {
+            drain();
+        }
+        if (len > _buf.length) {
+            if (Metrics.ON && _measured) {
+                Metrics.CHARS_OUT.add(len);
+            }
+            try {
+                _out.write(text, off, len);
+            } catch (IOException excp) {
+                throw error("could not write output");
+            }
+        } else {
+            System.arraycopy(text, off, _buf, _pos, len);
+            _pos += len;
+        }
+        _count = 0;
+    }
+
+    /** Send all buffered output to the underlying Writer and flush it. */
+    void flush() {
+        drain();
+        try {
+            _out.flush();
+        } catch (IOException excp) {
+            throw error("could not write output");
+        }
+    }
+
+    /** Flush and close the underlying Writer. */
+    void close() {
+        flush();
+        try {
+            _out.close();
+        } catch (IOException excp) {
+            throw error("could not write output");
+        }
+    }
+
+    /** Hand my buffered characters to the underlying Writer. */
+    private void drain() {
+        if (Metrics.ON && _measured) {
+            Metrics.CHARS_OUT.add(_pos);
+        }
+        try {
+            _out.write(_buf, 0, _pos);
+        } catch (IOException excp) {
+            throw error("could not write output");
+        }
+        _pos = 0;
+    }
+
+    /** The line terminator, as used by PrintStream.println. */
+    private static final String NEWLINE = System.lineSeparator();
+
+    /** Destination of my output. */
+    private final Writer _out;
+
+    /** Buffered output. */
+    private final char[] _buf;
+
+    /** Number of characters in _buf. */
+    private int _pos;
+
+    /** Number of letters written on the current message line. */
+    private int _count;
+
+    /** True iff my output counts toward Metrics.CHARS_OUT. */
+    private final boolean _measured;
+}
@@ -0,0 +1,551 @@
+package enigma;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+import static enigma.EnigmaException.*;
+
+/** A ciphertext-only attack on machines built to a MachineSpec.  It
+ *  tries every rotor order and starting setting, and every ring
+ *  setting of the rotors in the rightmost few slots, decrypts the
+ *  ciphertext at each with no plugboard, and keeps the keys whose
+ *  decrypts a Scorer rates highest.  The plugboard is left to be
+ *  recovered afterwards.
+ *
+ *  The work is divided into items, one for each rotor order and
+ *  setting of the rotor in slot 1, which are spread over the threads of
+ *  a ForkJoinPool.  Each thread keeps its working storage from one key
+ *  to the next.  A decrypt is abandoned as soon as its Scorer's bound
+ *  shows it cannot beat the keys already kept.  A search can save the
+ *  items it has finished and the keys it has kept to a checkpoint file
+ *  as it goes, and a later search given that file picks up from there.
+ *  @author Manaal Siddiqui
+ */
+class KeySearch {
+
+    /** About how often search reports progress, in milliseconds. */
+    static final long PROGRESS_INTERVAL = 1000;
+
+    /** About how often search saves a checkpoint, in milliseconds. */
+    static final long CHECKPOINT_INTERVAL = 30000;
+
+    /** Number of letters decrypted between checks of a decrypt's
+     *  bound. */
+    static final int PRUNE_INTERVAL = 16;
+
+    /** Number of cores each searching thread keeps. */
+    static final int CORES = 64;
+
+    /** Receives reports of a search's progress. */
+    interface Listener {
+        /** Called as the search goes on, and once at its end, with the
+         *  number of KEYS tried (including any tried before a checkpoint)
+         *  in the NANOS nanoseconds since it began. */
+        void progress(long keys, long nanos);
+    }
+
+    /** A key that the search kept, and the score of its decrypt. */
+    static final class Candidate {
+
+        /** The key of SPEC with rotors SLOTS, settings POSNS and ring
+         *  settings RINGS (all by slot), whose decrypt scored SCORE. */
+        Candidate(MachineSpec spec, int[] slots, int[] posns, int[] rings,
+                  double score) {
+            this(spec, slots, posns, rings, "", score);
+        }
+
+        /** As for the other constructor, but with plugboard cycles
+         *  PLUGS. */
+        private Candidate(MachineSpec spec, int[] slots, int[] posns,
+                          int[] rings, String plugs, double score) {
+            _spec = spec;
+            _slots = slots;
+            _posns = posns;
+            _rings = rings;
+            _plugs = plugs;
+            _score = score;
+        }
+
+        /** Return me with plugboard cycles PLUGS, scoring SCORE. */
+        Candidate withPlugboard(String plugs, double score) {
+            return new Candidate(_spec, _slots, _posns, _rings, plugs, score);
+        }
+
+        /** Return the score of my decrypt. */
+        double score() {
+            return _score;
+        }
+
+        /** Return a new Session set to me, with plugboard PLUGBOARD. */
+        Session session(Permutation plugboard) {
+            int[] rings = new int[_spec.numAvailable()];
+            for (int i = 0; i < _slots.length; i++) {
+                rings[_slots[i]] = _rings[i];
+            }
+            return new Session(_spec, _slots.clone(), _posns.clone(), rings,
+                               plugboard);
+        }
+
+        /** Return true iff OTHER is the same key as me. */
+        boolean sameKey(Candidate other) {
+            return Arrays.equals(_slots, other._slots)
+                && Arrays.equals(_posns, other._posns)
+                && Arrays.equals(_rings, other._rings);
+        }
+
+        /** Return me as a setting line for Main, with ring settings and
+         *  my plugboard, if any. */
+        @Override
+        public String toString() {
+            Alphabet alpha = _spec.alphabet();
+            StringBuilder result = new StringBuilder("*");
+            for (int r : _slots) {
+                result.append(' ').append(_spec.name(r));
+            }
+            result.append(' ');
+            for (int i = 1; i < _slots.length; i++) {
+                result.appendCodePoint(alpha.toCodePoint(_posns[i]));
+            }
+            result.append(' ');
+            for (int i = 1; i < _slots.length; i++) {
+                result.appendCodePoint(alpha.toCodePoint(_rings[i]));
+            }
+            if (!_plugs.isEmpty()) {
+                result.append(' ').append(_plugs);
+            }
+            return result.toString();
+        }
+
+        /** Return me in the form used in checkpoint files. */
+        String save() {
+            return String.format("best %s %s %s %s", _score, join(_slots),
+                                 join(_posns), join(_rings));
+        }
+
+        /** Return the items of A separated by commas. */
+        private static String join(int[] a) {
+            StringBuilder result = new StringBuilder();
+            for (int k = 0; k < a.length; k++) {
+                result.append(k == 0 ? "" : ",").append(a[k]);
+            }
+            return result.toString();
+        }
+
+        /** My spec. */
+        private final MachineSpec _spec;
+        /** The rotor in each slot. */
+        private final int[] _slots;
+        /** The setting of each slot. */
+        private final int[] _posns;
+        /** The ring setting of each slot. */
+        private final int[] _rings;
+        /** My plugboard cycles, or "" if none. */
+        private final String _plugs;
+        /** The score of my decrypt. */
+        private final double _score;
+    }
+
+    /** A search of machines built to SPEC for the KEEP keys whose
+     *  decrypts of CIPHER (as alphabet indices) score highest by
+     *  SCORER, trying every ring setting of the rightmost RINGSLOTS
+     *  slots and leaving the others at 0. */
+    KeySearch(MachineSpec spec, int[] cipher, Scorer scorer, int ringSlots,
+              int keep) {
+        if (cipher.length == 0) {
+            throw error("empty ciphertext");
+        } else if (spec.numRotors() < 2) {
+            throw error("search needs at least one rotor after the "
+                        + "reflector");
+        } else if (ringSlots < 0 || ringSlots >= spec.numRotors()) {
+            throw error("bad number of ring slots");
+        } else if (keep < 1) {
+            throw error("must keep at least one key");
+        }
+        _spec = spec;
+        _size = spec.alphabet().size();
+        _cipher = cipher;
+        _scorer = scorer;
+        _ringSlots = ringSlots;
+        _keep = keep;
+        _orders = spec.rotorOrders();
+        long perItem = 1;
+        for (int i = 2; i < spec.numRotors() + ringSlots; i++) {
+            perItem *= _size;
+        }
+        _perItem = perItem;
+    }
+
+    /** Return the number of keys search tries. */
+    long keys() {
+        return _perItem * items();
+    }
+
+    /** Return the number of keys that the last search took as already
+     *  tried from its checkpoint. */
+    long resumed() {
+        return _resumed;
+    }
+
+    /** Try every key on THREADS threads, reporting progress to LISTENER
+     *  about every PROGRESS_INTERVAL milliseconds from the calling
+     *  thread.  If CHECKPOINT is not null, first pick up from the
+     *  checkpoint it names, if it exists, and save a checkpoint there
+     *  about every CHECKPOINT_INTERVAL milliseconds and at the end.
+     *  Returns the keys kept, best first. */
+    List<Candidate> search(int threads, Listener listener, Path checkpoint) {
+        if (checkpoint != null && Files.exists(checkpoint)) {
+            load(checkpoint);
+        }
+        long start = System.nanoTime();
+        long saved = start;
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try {
+            ForkJoinTask<?> task = pool.submit(new SearchTask(0, items()));
+            while (true) {
+                try {
+                    task.get(PROGRESS_INTERVAL, TimeUnit.MILLISECONDS);
+                    break;
+                } catch (TimeoutException excp) {
+                    long now = System.nanoTime();
+                    listener.progress(_tried.get(), now - start);
+                    if (checkpoint != null && now - saved
+                        >= TimeUnit.MILLISECONDS.toNanos(
+                               CHECKPOINT_INTERVAL)) {
+                        save(checkpoint);
+                        saved = now;
+                    }
+                }
+            }
+        } catch (ExecutionException excp) {
+            if (excp.getCause() instanceof EnigmaException) {
+                throw (EnigmaException) excp.getCause();
+            }
+            throw error("search failed: %s", excp.getCause());
+        } catch (InterruptedException excp) {
+            throw error("interrupted");
+        } finally {
+            pool.shutdownNow();
+        }
+        if (checkpoint != null) {
+            save(checkpoint);
+        }
+        listener.progress(_tried.get(), System.nanoTime() - start);
+        synchronized (this) {
+            return new ArrayList<>(_best);
+        }
+    }
+
+    /** Return the number of work items. */
+    private int items() {
+        return _orders.length * _size;
+    }
+
+    /** Return a description of this search, to make sure a checkpoint
+     *  belongs to it. */
+    private String fingerprint() {
+        return String.format("%08x/%d/%d/%d/%d/%s",
+                             Arrays.hashCode(_cipher), _cipher.length,
+                             _orders.length, _size, _ringSlots,
+                             _scorer.describe());
+    }
+
+    /** Save my finished items and kept keys to CHECKPOINT, replacing it
+     *  only once the new checkpoint is completely written. */
+    private void save(Path checkpoint) {
+        StringBuilder text = new StringBuilder();
+        synchronized (this) {
+            text.append("enigma-search ").append(fingerprint()).append('\n');
+            text.append("done");
+            for (long word : _done.toLongArray()) {
+                text.append(' ').append(Long.toHexString(word));
+            }
+            text.append('\n');
+            for (Candidate c : _best) {
+                text.append(c.save()).append('\n');
+            }
+        }
+        Path temp = checkpoint.resolveSibling(checkpoint.getFileName()
+                                              + ".tmp");
+        try {
+            Files.writeString(temp, text);
+            Files.move(temp, checkpoint, REPLACE_EXISTING, ATOMIC_MOVE);
+        } catch (IOException excp) {
+            throw error("could not write checkpoint %s", checkpoint);
+        }
+    }
+
+    /** Pick up from the search saved in CHECKPOINT. */
+    private synchronized void load(Path checkpoint) {
+        List<String> lines;
+        try {
+            lines = Files.readAllLines(checkpoint);
+        } catch (IOException excp) {
+            throw error("could not read checkpoint %s", checkpoint);
+        }
+        if (lines.size() < 2
+            || !lines.get(0).equals("enigma-search " + fingerprint())) {
+            throw error("checkpoint %s is for a different search",
+                        checkpoint);
+        }
+        try {
+            String[] words = lines.get(1).split(" ");
+            long[] done = new long[words.length - 1];
+            for (int k = 1; k < words.length; k++) {
+                done[k - 1] = Long.parseUnsignedLong(words[k], 16);
+            }
+            _done = BitSet.valueOf(done);
+            for (String line : lines.subList(2, lines.size())) {
+                String[] parts = line.split(" ");
+                offer(parse(parts[2]), parse(parts[3]), parse(parts[4]),
+                      Double.parseDouble(parts[1]));
+            }
+        } catch (NumberFormatException | ArrayIndexOutOfBoundsException
+                 excp) {
+            throw error("bad checkpoint %s", checkpoint);
+        }
+        _resumed = _done.cardinality() * _perItem;
+        _tried.set(_resumed);
+    }
+
+    /** Return the integers in the comma-separated list S. */
+    private static int[] parse(String s) {
+        return Arrays.stream(s.split(",")).mapToInt(Integer::parseInt)
+            .toArray();
+    }
+
+    /** Keep the key with rotors SLOTS, settings POSNS and ring settings
+     *  RINGS if its SCORE is among the best, copying the arrays. */
+    private synchronized void offer(int[] slots, int[] posns, int[] rings,
+                                    double score) {
+        int n = _best.size();
+        if (n == _keep && score <= _best.get(n - 1).score()) {
+            return;
+        }
+        Candidate c = new Candidate(_spec, slots.clone(), posns.clone(),
+                                    rings.clone(), score);
+        int k = 0;
+        for (Candidate other : _best) {
+            if (other.sameKey(c)) {
+                return;
+            } else if (other.score() >= score) {
+                k += 1;
+            }
+        }
+        _best.add(k, c);
+        if (_best.size() > _keep) {
+            _best.remove(_keep);
+        }
+        if (_best.size() == _keep) {
+            _floor = _best.get(_keep - 1).score();
+        }
+    }
+
+    /** Record that ITEM is finished. */
+    private synchronized void finish(int item) {
+        _done.set(item);
+    }
+
+    /** Return true iff ITEM was finished. */
+    private synchronized boolean finished(int item) {
+        return _done.get(item);
+    }
+
+    /** Tries the keys of work items LO .. HI-1.  Item q covers rotor
+     *  order q / size with the rotor in slot 1 at setting q % size. */
+    private class SearchTask extends RecursiveAction {
+
+        /** A task for items LO .. HI-1. */
+        SearchTask(int lo, int hi) {
+            _lo = lo;
+            _hi = hi;
+        }
+
+        @Override
+        protected void compute() {
+            if (_hi - _lo == 1) {
+                if (!finished(_lo)) {
+                    _searchers.get().search(_lo);
+                    finish(_lo);
+                }
+            } else {
+                int mid = (_lo + _hi) >>> 1;
+                invokeAll(new SearchTask(_lo, mid), new SearchTask(mid, _hi));
+            }
+        }
+
+        /** Bounds of my items. */
+        private final int _lo, _hi;
+    }
+
+    /** The working storage of one thread's search, which it keeps from
+     *  one key and work item to the next. */
+    private class Searcher {
+
+        /** Number of keys tried between updates of _tried. */
+        static final int TALLY = 1 << 10;
+
+        /** Try every key of work item ITEM (see SearchTask). */
+        void search(int item) {
+            _slots = _orders[item / _size];
+            Arrays.fill(_start, 0);
+            Arrays.fill(_rings, 0);
+            _start[1] = item % _size;
+            int tally = 0;
+            do {
+                tryKey();
+                tally += 1;
+                if (tally == TALLY) {
+                    _tried.addAndGet(tally);
+                    tally = 0;
+                }
+            } while (next());
+            _tried.addAndGet(tally);
+        }
+
+        /** Advance _start (from slot 2) and then the searched slots of
+         *  _rings as an odometer, the rightmost slot fastest.  Returns
+         *  false once they wrap around to all 0. */
+        private boolean next() {
+            int n = _start.length;
+            for (int i = n - 1; i >= 2; i--) {
+                if (++_start[i] < _size) {
+                    return true;
+                }
+                _start[i] = 0;
+            }
+            for (int i = n - 1; i >= n - _ringSlots; i--) {
+                if (++_rings[i] < _size) {
+                    return true;
+                }
+                _rings[i] = 0;
+            }
+            return false;
+        }
+
+        /** Decrypt and score the ciphertext with the key in _slots,
+         *  _start and _rings, and offer the key if it might be kept. */
+        private void tryKey() {
+            int n = _slots.length;
+            int size = _size;
+            int width = 2 * size;
+            int fast = _slots[n - 1] * width;
+            int ring = _rings[n - 1];
+            int[] forward = _forward;
+            int[] inverse = _inverse;
+            int[] cipher = _cipher;
+            int[] p = _p;
+            System.arraycopy(_start, 0, p, 0, n);
+            Scorer scorer = _threadScorer;
+            scorer.reset();
+            int[] core = null;
+            for (int t = 0; t < cipher.length; t++) {
+                if (moveRotors(p) || core == null) {
+                    for (int i = 0; i < n - 1; i++) {
+                        int s = p[i] - _rings[i];
+                        _shifts[i] = s + (size & (s >> 31));
+                    }
+                    core = _cores.get(_slots, _shifts);
+                }
+                int s = p[n - 1] - ring;
+                s += size & (s >> 31);
+                int r = forward[fast + cipher[t] + s] - s;
+                r = core[r + (size & (r >> 31))] + s;
+                r = inverse[fast + r] - s;
+                scorer.add(r + (size & (r >> 31)));
+                if (t % PRUNE_INTERVAL == PRUNE_INTERVAL - 1
+                    && scorer.bound(cipher.length - 1 - t) < _floor) {
+                    return;
+                }
+            }
+            double score = scorer.score();
+            if (score > _floor) {
+                offer(_slots, _start, _rings, score);
+            }
+        }
+
+        /** Advance settings P as Session.moveRotors does, with my rotor
+         *  order.  Returns true iff a rotor other than the rightmost
+         *  moved. */
+        private boolean moveRotors(int[] p) {
+            int n = p.length;
+            int pawls = _spec.numPawls();
+            boolean slow = false;
+            for (int i = n - pawls; i < n; i++) {
+                int r = _slots[i];
+                if (Stepping.moves(i, n, pawls, _spec.rotates(r),
+                                   _spec.atNotch(r, p[i]),
+                                   i < n - 1
+                                   && _spec.atNotch(_slots[i + 1], p[i + 1]))) {
+                    p[i] = p[i] + 1 == _size ? 0 : p[i] + 1;
+                    slow |= i < n - 1;
+                }
+            }
+            return slow;
+        }
+
+        /** The rotor order being searched. */
+        private int[] _slots;
+        /** Starting settings of the current key, by slot. */
+        private final int[] _start = new int[_spec.numRotors()];
+        /** Ring settings of the current key, by slot. */
+        private final int[] _rings = new int[_spec.numRotors()];
+        /** Settings during a decrypt. */
+        private final int[] _p = new int[_spec.numRotors()];
+        /** Settings less ring settings of all slots but the rightmost,
+         *  modulo the alphabet size. */
+        private final int[] _shifts = new int[_spec.numRotors()];
+        /** Recently used cores. */
+        private final CoreCache _cores = new CoreCache(_spec, CORES);
+        /** My scorer. */
+        private final Scorer _threadScorer = _scorer.copy();
+        /** Rotor wirings, as for MachineSpec.forwardWiring. */
+        private final int[] _forward = _spec.forwardWiring();
+        /** Inverse rotor wirings, as for MachineSpec.inverseWiring. */
+        private final int[] _inverse = _spec.inverseWiring();
+    }
+
+    /** The specification of the machines attacked. */
+    private final MachineSpec _spec;
+    /** Size of the alphabet. */
+    private final int _size;
+    /** The ciphertext, as alphabet indices. */
+    private final int[] _cipher;
+    /** The scorer of decrypts, of which each thread uses a copy. */
+    private final Scorer _scorer;
+    /** Number of rightmost slots whose ring settings are searched. */
+    private final int _ringSlots;
+    /** Number of keys to keep. */
+    private final int _keep;
+    /** The rotor orders tried, as slot contents for Session. */
+    private final int[][] _orders;
+    /** Number of keys in each work item. */
+    private final long _perItem;
+    /** The keys kept so far, best first. */
+    private final ArrayList<Candidate> _best = new ArrayList<>();
+    /** The lowest score among _best once it is full, and until then
+     *  negative infinity.  A key must beat this to be kept. */
+    private volatile double _floor = Double.NEGATIVE_INFINITY;
+    /** The work items finished. */
+    private BitSet _done = new BitSet();
+    /** Number of keys taken from a checkpoint as already tried. */
+    private long _resumed;
+    /** Number of keys tried so far. */
+    private final AtomicLong _tried = new AtomicLong();
+    /** The Searcher of each thread. */
+    private final ThreadLocal<Searcher> _searchers =
+        ThreadLocal.withInitial(Searcher::new);
+}
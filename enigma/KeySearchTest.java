@@ -0,0 +1,169 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+import static enigma.TestMachines.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Random;
+
+/** The suite of all JUnit tests for the KeySearch class and its
+ *  Scorers.
+ *  @author Manaal Siddiqui
+ */
+public class KeySearchTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** The standard upper-case alphabet. */
+    private Alphabet alpha = new Alphabet();
+
+    /** A plaintext message. */
+    private static final String PLAIN =
+        "SHOULD YOU HAVE ANY QUESTIONS ABOUT THE STATUS OF THE CONVOY "
+        + "PLEASE CONTACT THE HARBOUR MASTER AT ONCE THE WEATHER IS "
+        + "EXPECTED TO TURN BAD TOWARDS EVENING AND ALL SHIPS MUST RETURN "
+        + "TO PORT BEFORE THE STORM ARRIVES";
+
+    /** Return PLAIN enciphered by SPEC at "* B IV I KP AG". */
+    private int[] cipher(MachineSpec spec) {
+        Session s = new Session(spec);
+        s.insertRotors(new String[] {"B", "IV", "I"});
+        s.setRotors("KP");
+        s.setRings("AG");
+        s.setPlugboard(new Permutation("", alpha));
+        return s.convert(PLAIN).chars().map(alpha::codePointToInt).toArray();
+    }
+
+    /** Ignores progress. */
+    private static final KeySearch.Listener QUIET = (keys, nanos) -> { };
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void testFindsKey() {
+        MachineSpec spec = small();
+        int[] cipher = cipher(spec);
+        KeySearch search = new KeySearch(spec, cipher,
+                                         new Coincidence(26), 1, 3);
+        assertEquals(6 * 26 * 26 * 26, search.keys());
+        List<KeySearch.Candidate> best = search.search(1, QUIET, null);
+        assertEquals(3, best.size());
+        assertEquals("* B IV I KP AG", best.get(0).toString());
+        assertTrue(best.get(0).score() >= best.get(1).score());
+        Session s = best.get(0).session(new Permutation("", alpha));
+        StringBuilder text = new StringBuilder();
+        for (int c : cipher) {
+            text.append(alpha.toChar(c));
+        }
+        assertEquals(PLAIN.replace(" ", ""), s.convert(text.toString()));
+    }
+
+    @Test
+    public void testCheckpoint() throws IOException {
+        MachineSpec spec = small();
+        int[] cipher = cipher(spec);
+        Path file = Files.createTempFile("enigma", ".search");
+        Files.delete(file);
+        try {
+            List<KeySearch.Candidate> first =
+                new KeySearch(spec, cipher, new Coincidence(26), 0, 2)
+                .search(2, QUIET, file);
+            KeySearch again =
+                new KeySearch(spec, cipher, new Coincidence(26), 0, 2);
+            List<KeySearch.Candidate> second = again.search(2, QUIET, file);
+            assertEquals(again.keys(), again.resumed());
+            assertEquals(first.size(), second.size());
+            for (int k = 0; k < first.size(); k++) {
+                assertTrue(first.get(k).sameKey(second.get(k)));
+            }
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    @Test
+    public void testCheckpointOtherTable() throws IOException {
+        MachineSpec spec = small();
+        int[] cipher = cipher(spec);
+        Path file = Files.createTempFile("enigma", ".search");
+        Files.delete(file);
+        try {
+            new KeySearch(spec, cipher, new Ngrams(alpha, PLAIN), 0, 2)
+                .search(2, QUIET, file);
+            Scorer other = new Ngrams(alpha, PLAIN.substring(20));
+            KeySearch again = new KeySearch(spec, cipher, other, 0, 2);
+            try {
+                again.search(2, QUIET, file);
+                fail("checkpoint from another n-gram table accepted");
+            } catch (EnigmaException excp) {
+                /* Expected. */
+            }
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    @Test
+    public void testBounds() {
+        Random rand = new Random(19);
+        Scorer[] scorers = { new Coincidence(26),
+                             new Ngrams(alpha, PLAIN) };
+        for (Scorer scorer : scorers) {
+            for (int trial = 0; trial < 50; trial++) {
+                scorer.reset();
+                int len = 1 + rand.nextInt(60);
+                int cut = rand.nextInt(len);
+                double bound = 0;
+                for (int t = 0; t < len; t++) {
+                    if (t == cut) {
+                        bound = scorer.bound(len - t);
+                    }
+                    scorer.add(PLAIN.charAt(t) == ' ' ? rand.nextInt(26)
+                               : alpha.toInt(PLAIN.charAt(t)));
+                }
+                assertTrue(scorer.score() <= bound + 1e-9);
+            }
+        }
+    }
+
+    @Test
+    public void testNgramsPreferPlaintext() {
+        Scorer scorer = new Ngrams(alpha, PLAIN);
+        scorer.reset();
+        for (char ch : "THEWEATHER".toCharArray()) {
+            scorer.add(alpha.toInt(ch));
+        }
+        double plain = scorer.score();
+        scorer.reset();
+        for (char ch : "QXZJVKQWPF".toCharArray()) {
+            scorer.add(alpha.toInt(ch));
+        }
+        assertTrue(plain > scorer.score());
+    }
+
+    @Test
+    public void testNgramsLargeAlphabet() {
+        StringBuilder letters = new StringBuilder();
+        for (int i = 0; i < 2000; i++) {
+            letters.append((char) (0x4e00 + i));
+        }
+        Alphabet big = new Alphabet(letters.toString());
+        Ngrams scorer = new Ngrams(big, letters.toString());
+        assertEquals(2, scorer.n());
+        scorer.reset();
+        for (int c = big.size() - 1; c >= 0; c--) {
+            scorer.add(c);
+        }
+        assertTrue(scorer.score() < 0);
+    }
+}
@@ -0,0 +1,230 @@
+package enigma;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ArrayBlockingQueue;
+
+import static enigma.EnigmaException.*;
+
+/** The keystream of an Enigma machine: what it does at each successive
+ *  position of a message, which does not depend on the message.  A
+ *  producer thread steps a private copy of the machine ahead of use,
+ *  BLOCK positions at a time, into a ring of DEPTH reusable blocks.  For
+ *  each position a block holds the core of all rotors but the rightmost
+ *  (a shared table from the spec's CorePool; see Session) and the
+ *  offset of the rightmost rotor, so converting a letter costs the
+ *  consumer a few table lookups and no stepping, and stepping overlaps
+ *  with whatever else the consumer does, such as I/O.  Nothing is
+ *  allocated per position.
+ *
+ *  A Keystream pays off only when another processor is free to run the
+ *  producer.  It is meant to be used by one consumer thread, and must
+ *  be closed to stop the producer.
+ *  @author Manaal Siddiqui
+ */
+class Keystream implements AutoCloseable {
+
+    /** Number of positions in a block. */
+    static final int BLOCK = 1 << 10;
+
+    /** Number of blocks in the ring. */
+    static final int DEPTH = 8;
+
+    /** The stepped state of BLOCK successive positions. */
+    private static final class Block {
+        /** cores[k] is the core at position k. */
+        private final int[][] cores = new int[BLOCK][];
+        /** shifts[k] is the setting less the ring setting of the
+         *  rightmost rotor at position k. */
+        private final int[] shifts = new int[BLOCK];
+    }
+
+    /** A keystream for a message begun with SESSION as it stands now.
+     *  SESSION itself is not changed. */
+    Keystream(Session session) {
+        MachineSpec spec = session.spec();
+        _alphabet = spec.alphabet();
+        _size = _alphabet.size();
+        _forward = spec.forwardWiring();
+        _inverse = spec.inverseWiring();
+        _fast = session.rotor(spec.numRotors() - 1) * 2 * _size;
+        _plugboard = session.plugboard();
+        _full = new ArrayBlockingQueue<>(DEPTH);
+        _free = new ArrayBlockingQueue<>(DEPTH);
+        for (int i = 0; i < DEPTH; i++) {
+            _free.add(new Block());
+        }
+        Session copy = session.copy();
+        _producer = new Thread(() -> produce(copy), "enigma-keystream");
+        _producer.setDaemon(true);
+        _producer.start();
+    }
+
+    /** Return the conversion of C (an index into the alphabet) at the
+     *  next position. */
+    int convert(int c) {
+        if (_index == BLOCK) {
+            nextBlock();
+        }
+        int size = _size;
+        int s = _block.shifts[_index];
+        int[] core = _block.cores[_index];
+        _index += 1;
+        int r = _forward[_fast + _plugboard.permute(c) + s] - s;
+        r = core[r + (size & (r >> 31))] + s;
+        r = _inverse[_fast + r] - s;
+        return _plugboard.permute(r + (size & (r >> 31)));
+    }
+
+    /** Make _block the next block from the producer. */
+    private void nextBlock() {
+        try {
+            if (_block != FAILED) {
+                if (_block != null) {
+                    _free.put(_block);
+                }
+                _block = _full.take();
+            }
+        } catch (InterruptedException excp) {
+            throw error("interrupted");
+        }
+        if (_block == FAILED) {
+            if (_failure instanceof EnigmaException) {
+                throw (EnigmaException) _failure;
+            }
+            throw error("keystream failed: %s", _failure);
+        }
+        _index = 0;
+    }
+
+    /** Convert the LEN characters of IN starting at OFF into OUT
+     *  starting at OUTOFF, as Machine.convert(char[], int, int, char[],
+     *  int) does.  Returns the number of characters stored. */
+    int convert(char[] in, int off, int len, char[] out, int outOff) {
+        if (!_alphabet.bmp()) {
+            int n = CodePoints.convert(_alphabet, this::convert, in, off,
+                                       len, out, outOff);
+            if (Metrics.ON) {
+                Metrics.CHARS.add(n);
+            }
+            return n;
+        }
+        int k = outOff;
+        for (int i = off; i < off + len; i++) {
+            char ch = in[i];
+            if (Character.isWhitespace(ch)) {
+                continue;
+            }
+            out[k] = _alphabet.toChar(convert(_alphabet.toInt(ch)));
+            k += 1;
+        }
+        if (Metrics.ON) {
+            Metrics.CHARS.add(k - outOff);
+        }
+        return k - outOff;
+    }
+
+    /** Convert the LEN bytes of IN starting at OFF into OUT starting at
+     *  OUTOFF, byte for byte, as Machine.convert(byte[], int, int,
+     *  byte[], int) does. */
+    void convert(byte[] in, int off, int len, byte[] out, int outOff) {
+        if (!_alphabet.bytes()) {
+            throw error("alphabet is not the 256 bytes");
+        }
+        for (int i = 0; i < len; i++) {
+            out[outOff + i] = _alphabet.toByte(
+                convert(_alphabet.byteToInt(in[off + i])));
+        }
+        if (Metrics.ON) {
+            Metrics.CHARS.add(len);
+        }
+    }
+
+    /** Convert bytes from IN into OUT, as Machine.convert(ByteBuffer,
+     *  ByteBuffer) does.  Returns the number of bytes converted. */
+    int convert(ByteBuffer in, ByteBuffer out) {
+        if (!_alphabet.bytes()) {
+            throw error("alphabet is not the 256 bytes");
+        }
+        int len = Math.min(in.remaining(), out.remaining());
+        for (int i = 0; i < len; i++) {
+            out.put(_alphabet.toByte(convert(_alphabet.byteToInt(in.get()))));
+        }
+        if (Metrics.ON) {
+            Metrics.CHARS.add(len);
+        }
+        return len;
+    }
+
+    /** Stop the producer. */
+    @Override
+    public void close() {
+        _producer.interrupt();
+    }
+
+    /** Fill blocks from _free with the state at successive positions
+     *  of SESSION, and pass them to _full, until interrupted.  If
+     *  anything goes wrong, record it in _failure and pass FAILED. */
+    private void produce(Session session) {
+        try {
+            int n = session.spec().numRotors();
+            while (true) {
+                Block block = _free.take();
+                for (int k = 0; k < BLOCK; k++) {
+                    session.moveRotors();
+                    block.cores[k] = session.core();
+                    int s = session.setting(n - 1) - session.ring(n - 1);
+                    block.shifts[k] = s + (_size & (s >> 31));
+                }
+                _full.put(block);
+            }
+        } catch (InterruptedException excp) {
+            /* Closed: stop producing. */
+        } catch (Throwable excp) {
+            _failure = excp;
+            try {
+                _full.put(FAILED);
+            } catch (InterruptedException interrupted) {
+                /* Closed: no one is waiting. */
+            }
+        }
+    }
+
+    /** Passed in place of a block once the producer has failed. */
+    private static final Block FAILED = new Block();
+
+    /** Alphabet of the machine. */
+    private final Alphabet _alphabet;
+
+    /** Size of _alphabet. */
+    private final int _size;
+
+    /** Rotor wirings, as for MachineSpec.forwardWiring. */
+    private final int[] _forward;
+
+    /** Inverse rotor wirings, as for MachineSpec.inverseWiring. */
+    private final int[] _inverse;
+
+    /** Index in _forward and _inverse of the rightmost rotor's wiring. */
+    private final int _fast;
+
+    /** The plugboard. */
+    private final Permutation _plugboard;
+
+    /** Blocks filled by the producer, in order, not yet taken. */
+    private final ArrayBlockingQueue<Block> _full;
+
+    /** Blocks free to be filled. */
+    private final ArrayBlockingQueue<Block> _free;
+
+    /** The thread stepping the rotors. */
+    private final Thread _producer;
+
+    /** The block being used, or null before the first. */
+    private Block _block;
+
+    /** Index in _block of the next position. */
+    private int _index = BLOCK;
+
+    /** What made the producer fail, if it has. */
+    private volatile Throwable _failure;
+}
@@ -0,0 +1,74 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+import static enigma.TestMachines.*;
+
+/** The suite of all JUnit tests for the Keystream class.
+ *  @author Manaal Siddiqui
+ */
+public class KeystreamTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** The standard upper-case alphabet. */
+    private Alphabet alpha = new Alphabet();
+
+    /** Return a five-slot, three-pawl machine (see TestMachines), set up
+     *  as in caroll2.in. */
+    private Machine naval() {
+        Machine m = navalMachine();
+        m.insertRotors(new String[] {"B", "Beta", "III", "IV", "I"});
+        m.setRotors("AXLE");
+        m.setRings("BCDE");
+        m.setPlugboard(new Permutation("(BZ) (AR) (PD) (TQ)", alpha));
+        return m;
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void testMatchesMachine() {
+        Machine m = naval();
+        char[] msg = new char[3 * Keystream.BLOCK * Keystream.DEPTH + 17];
+        for (int i = 0; i < msg.length; i++) {
+            msg[i] = i % 9 == 0 ? ' ' : (char) ('A' + (i * 11) % 26);
+        }
+        char[] expected = new char[msg.length];
+        char[] actual = new char[msg.length];
+        int n = m.copy().convert(msg, 0, msg.length, expected, 0);
+        try (Keystream keys = m.keystream()) {
+            int k = keys.convert(msg, 0, 100, actual, 0);
+            k += keys.convert(msg, 100, msg.length - 100, actual, k);
+            assertEquals(n, k);
+        }
+        assertArrayEquals(expected, actual);
+        assertEquals(new String(expected, 0, 5),
+                     m.convert(new String(msg, 0, 6)));
+    }
+
+    @Test
+    public void testProducerFailure() {
+        MachineSpec spec = TestMachines.naval();
+        Session broken = new Session(spec, new int[] {4, 3, 1, 2, 0},
+                                     new int[1],
+                                     new int[spec.numAvailable()],
+                                     new Permutation("", alpha));
+        try (Keystream keys = new Keystream(broken)) {
+            for (int k = 0; k < 2; k++) {
+                try {
+                    keys.convert(0);
+                    fail("expected the producer's failure");
+                } catch (EnigmaException excp) {
+                    /* Expected, on every call. */
+                }
+            }
+        }
+    }
+}
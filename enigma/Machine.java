@@ -1,8 +1,11 @@
 package enigma;
 
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.ArrayList;
+import java.util.Arrays;
 
 /** Class that represents a complete enigma machine.
  *  @author Manaal Siddiqui
@@ -24,6 +27,21 @@ class Machine {
     /** additional. */
     private Rotor[] myrotors;
 
+    /** The unchanging part of my configuration. */
+    private final MachineSpec _spec;
+
+    /** My available rotors, indexed as in _spec. */
+    private final Rotor[] _available;
+
+    /** _slots[i] is the index in _spec of the rotor in slot i. */
+    private int[] _slots;
+
+    /** The core (see CorePool) last used in conversion, or null. */
+    private int[] _core;
+
+    /** The shifts of the rotors of _core, by slot. */
+    private int[] _coreShifts;
+
     /**construct a machine given.
      * @param alpha The alphabet for the configuration
      * @param numRotors the number of rotors in machine
@@ -32,14 +50,50 @@ class Machine {
      */
     Machine(Alphabet alpha, int numRotors, int pawls,
             Collection<Rotor> allRotors) {
-        _alphabet = alpha;
-        _nRotors = numRotors;
-        _nPawls = pawls;
-        ArrayList<String> rotorNames = new ArrayList<>();
-        for (Rotor r : allRotors) {
-            rotorNames.add(r.name());
-        }
+        this(new MachineSpec(alpha, numRotors, pawls, allRotors),
+             allRotors);
+    }
+
+    /** A machine built to SPEC, whose available rotors ALLROTORS are
+     *  those SPEC was made from, or copies of them. */
+    private Machine(MachineSpec spec, Collection<Rotor> allRotors) {
+        _alphabet = spec.alphabet();
+        _nRotors = spec.numRotors();
+        _nPawls = spec.numPawls();
         _theRotors = allRotors;
+        _available = allRotors.toArray(new Rotor[allRotors.size()]);
+        _spec = spec;
+    }
+
+    /** Return the unchanging specification of this machine. */
+    MachineSpec spec() {
+        return _spec;
+    }
+
+    /** Return a new Session for my spec in my current state: the same
+     *  rotors in the same slots, settings, ring settings and plugboard.
+     *  The session shares nothing mutable with me. */
+    Session session() {
+        int[] slots = new int[numRotors()];
+        int[] positions = new int[numRotors()];
+        for (int i = 0; i < numRotors(); i++) {
+            slots[i] = _slots[i];
+            positions[i] = myrotors[i].setting();
+        }
+        int[] rings = new int[_spec.numAvailable()];
+        int k = 0;
+        for (Rotor r : _theRotors) {
+            rings[k] = r.ring();
+            k += 1;
+        }
+        return new Session(_spec, slots, positions, rings, _plugboard);
+    }
+
+    /** Return a Keystream for a message begun with me in my current
+     *  state.  I am not changed by it, and it must be closed after
+     *  use. */
+    Keystream keystream() {
+        return new Keystream(session());
     }
 
     /** Return the number of rotor slots I have. */
@@ -58,12 +112,16 @@ class Machine {
     void setRings(String rings) {
         boolean first = true;
         int j = 0;
+        int[] ring = CodePoints.of(rings);
+        if (ring.length < numRotors() - 1) {
+            throw new EnigmaException("Wrong ring setting");
+        }
         for (Rotor r : myrotors) {
             if (first) {
                 r.setRing(0);
                 first = false;
             } else {
-                r.setRing(rings.charAt(j));
+                r.setRingIndex(_alphabet.codePointToInt(ring[j]));
                 j += 1;
             }
         }
@@ -73,47 +131,45 @@ class Machine {
      *  available rotors (ROTORS[0] names the reflector).
      *  Initially, all rotors are set at their 0 setting. */
     void insertRotors(String[] rotors) {
-        myrotors = new Rotor[numRotors()];
+        if (rotors.length != numRotors()) {
+            System.out.println("error amt of motors doesnt match capacitory");
+            throw new EnigmaException("the amount of rotors to be added "
+                    + "must match the capacity of the machine");
+        }
+        int[] slots = new int[rotors.length];
         for (int i = 0; i < rotors.length; i++) {
-            for (int j = i + 1; j < rotors.length; j++) {
-                if (rotors[i].equalsIgnoreCase(rotors[j])) {
+            slots[i] = _spec.index(rotors[i]);
+            for (int j = 0; j < i; j++) {
+                if (slots[i] != -1 && slots[j] == slots[i]) {
                     throw new EnigmaException("Duplicated Rotor");
                 }
             }
         }
-        HashMap<String, Rotor> mapRotors = new HashMap<String, Rotor>();
-        for (Rotor rotor : _theRotors) {
-            mapRotors.put(rotor.name().toUpperCase(), rotor);
-        }
+        myrotors = new Rotor[numRotors()];
         for (int a = 0; a < rotors.length; a++) {
-            String key = rotors[a].toUpperCase();
-            if (mapRotors.containsKey(key)) {
-                myrotors[a] = mapRotors.get(key);
-            } else {
+            if (slots[a] == -1) {
                 System.out.println("error bad rotor");
                 throw new EnigmaException("Bad rotor name");
             }
+            myrotors[a] = _available[slots[a]];
         }
-
-        if (rotors.length != myrotors.length) {
-            System.out.println("error amt of motors doesnt match capacitory");
-            throw new EnigmaException("the amount of rotors to be added "
-                    + "must match the capacity of the machine");
-        }
+        _slots = slots;
+        _core = null;
     }
 
     /** Set my rotors according to SETTING, which must be a string of
      *  numRotors()-1 characters in my alphabet. The first letter refers
      *  to the leftmost rotor setting (not counting the reflector).  */
     void setRotors(String setting) {
-        if (setting.length() != numRotors() - 1) {
+        int[] posns = CodePoints.of(setting);
+        if (posns.length != numRotors() - 1) {
             System.out.println("wrong setting");
             throw new EnigmaException("Wrong initial setting");
         }
         for (int i = 1; i < numRotors(); i++) {
-            char curr = setting.charAt(i - 1);
-            if (_alphabet.contains(curr)) {
-                myrotors[i].set(curr);
+            int curr = posns[i - 1];
+            if (_alphabet.containsCodePoint(curr)) {
+                myrotors[i].set(_alphabet.codePointToInt(curr));
             } else {
                 System.out.println("error not in alpha");
                 throw new EnigmaException("setting must be in Alphabet");
@@ -131,48 +187,304 @@ class Machine {
      *  the machine. */
     int convert(int c) {
         moveRotors();
+        Rotor fast = myrotors[numRotors() - 1];
+        int[] core = core();
         int result = _plugboard.permute(c);
-        for (int i = numRotors() - 1; i >= 0; i--) {
-            result = myrotors[i].convertForward(result);
+        result = fast.convertForward(result);
+        result = core[result];
+        result = fast.convertBackward(result);
+        return _plugboard.permute(result);
+    }
+
+    /** Return the core of all my rotors but the rightmost at their
+     *  current settings, from my spec's pool (see CorePool). */
+    private int[] core() {
+        int n = numRotors();
+        if (_coreShifts == null) {
+            _coreShifts = new int[n];
         }
-        for (int i = 1; i < numRotors(); i++) {
-            result = myrotors[i].convertBackward(result);
+        boolean same = _core != null;
+        for (int i = 0; i < n - 1; i++) {
+            Rotor r = myrotors[i];
+            int s = r.permutation().wrap(r.setting() - r.ring());
+            same = same && s == _coreShifts[i];
+            _coreShifts[i] = s;
         }
-        result = _plugboard.permute(result);
-        return result;
+        if (!same) {
+            _core = _spec.cores().get(_slots, _coreShifts);
+        }
+        return _core;
     }
 
     /** This will advance all my rotors depending on if they're at
-     * a notch or if its right neighbor is. */
+     * a notch or if its right neighbor is (see Stepping.moves). */
     void moveRotors() {
-        for (int i = numRotors() - numPawls(); i < numRotors(); i++) {
-            if (myrotors[i].rotates()) {
-                if (i == numRotors() - 1) {
-                    myrotors[i].advance();
-                } else if (myrotors[i + 1].atNotch()) {
-                    myrotors[i].advance();
-                } else if (myrotors[i].atNotch()
-                        && i != numRotors() - numPawls()) {
-                    myrotors[i].advance();
-                }
+        int n = numRotors();
+        for (int i = n - numPawls(); i < n; i++) {
+            Rotor r = myrotors[i];
+            if (Stepping.moves(i, n, numPawls(), r.rotates(), r.atNotch(),
+                               i < n - 1 && myrotors[i + 1].atNotch())) {
+                r.advance();
             }
         }
     }
 
+    /** Advance my rotors as if STEPS characters had been converted.  When
+     *  my stepping is regular (see Stepping.regular) this takes time
+     *  independent of STEPS; otherwise it takes at most about as long as
+     *  finding the cycle of my settings (see Stepping.seek). */
+    void advance(long steps) {
+        if (steps <= 0) {
+            return;
+        }
+        int[] start = settings();
+        int[] end = Stepping.seek(rotates(), notches(), start, numPawls(),
+                                  _alphabet.size(), steps);
+        for (int i = 0; i < numRotors(); i++) {
+            if (end[i] != start[i]) {
+                myrotors[i].set(end[i]);
+            }
+        }
+    }
+
+    /** Return the cycle of my rotor settings from where they are now:
+     *  how many steps before they begin to repeat, and how often they
+     *  repeat after that. */
+    Stepping.Cycle cycle() {
+        return Stepping.cycle(rotates(), notches(), settings(), numPawls(),
+                              _alphabet.size());
+    }
+
+    /** Return the settings of my rotors, by slot. */
+    private int[] settings() {
+        int[] result = new int[numRotors()];
+        for (int i = 0; i < numRotors(); i++) {
+            result[i] = myrotors[i].setting();
+        }
+        return result;
+    }
+
+    /** Return whether my rotors have ratchets, by slot. */
+    private boolean[] rotates() {
+        boolean[] result = new boolean[numRotors()];
+        for (int i = 0; i < numRotors(); i++) {
+            result[i] = myrotors[i].rotates();
+        }
+        return result;
+    }
+
+    /** Return the notches of my rotors, by slot. */
+    private int[][] notches() {
+        int[][] result = new int[numRotors()][];
+        for (int i = 0; i < numRotors(); i++) {
+            result[i] = myrotors[i].notches();
+        }
+        return result;
+    }
+
+    /** Return true iff my rotors' notches allow advance to jump directly
+     *  (see Stepping.regular). */
+    boolean regularStepping() {
+        return Stepping.regular(notches(), numPawls(), _alphabet.size());
+    }
+
+    /** Convert as for convert(char[], int, int, char[], int), but split
+     *  the message into pieces that are converted concurrently (see
+     *  Session.convertParallel) if my alphabet is bmp().  The result is
+     *  the same as converting sequentially, and I am left in the same
+     *  state. */
+    int convertParallel(char[] in, int off, int len, char[] out,
+                        int outOff) {
+        if (!_alphabet.bmp()) {
+            return convert(in, off, len, out, outOff);
+        }
+        int n = session().convertParallel(in, off, len, out, outOff);
+        advance(n);
+        return n;
+    }
+
     /** Returns the encoding/decoding of MSG, updating the state of
      *  the rotors accordingly. */
     String convert(String msg) {
-        String result = "";
-        for (int i = 0; i < msg.length(); i++) {
-            char ch = msg.charAt(i);
+        char[] buf = msg.toCharArray();
+        if (!_alphabet.bmp()) {
+            buf = Arrays.copyOf(buf, 2 * buf.length);
+        }
+        int n = convert(buf, 0, msg.length(), buf, 0);
+        return new String(buf, 0, n);
+    }
+
+    /** Convert the LEN characters of IN starting at OFF, skipping
+     *  whitespace, and store the results consecutively in OUT starting at
+     *  OUTOFF.  Returns the number of characters stored.  IN and OUT may
+     *  be the same array provided OUTOFF <= OFF, since output never gets
+     *  ahead of input.  If my alphabet is not bmp(), characters are code
+     *  points, and OUT needs room for 2 * LEN chars (see CodePoints). */
+    int convert(char[] in, int off, int len, char[] out, int outOff) {
+        if (!_alphabet.bmp()) {
+            int n = CodePoints.convert(_alphabet, this::convert, in, off,
+                                       len, out, outOff);
+            if (Metrics.ON) {
+                Metrics.CHARS.add(n);
+            }
+            return n;
+        }
+        int k = outOff;
+        for (int i = off; i < off + len; i++) {
+            char ch = in[i];
             if (Character.isWhitespace(ch)) {
                 continue;
             }
-            int code = _alphabet.toInt(ch);
-            int encrypted = convert(code);
-            result += _alphabet.toChar(encrypted);
+            out[k] = _alphabet.toChar(convert(_alphabet.toInt(ch)));
+            k += 1;
         }
-        return result;
+        if (Metrics.ON) {
+            Metrics.CHARS.add(k - outOff);
+        }
+        return k - outOff;
+    }
+
+    /** Convert characters from IN into OUT, skipping whitespace, until IN
+     *  is exhausted or OUT is full.  Both buffers' positions are advanced
+     *  past the characters consumed and produced.  Returns the number of
+     *  characters put into OUT.  If my alphabet is not bmp(), conversion
+     *  is by code point, as for CodePoints.convert. */
+    int convert(CharBuffer in, CharBuffer out) {
+        if (!_alphabet.bmp()) {
+            int n = CodePoints.convert(_alphabet, this::convert, in, out);
+            if (Metrics.ON) {
+                Metrics.CHARS.add(n);
+            }
+            return n;
+        }
+        if (in.hasArray() && out.hasArray() && !out.isReadOnly()) {
+            int total = 0;
+            while (in.hasRemaining() && out.hasRemaining()) {
+                int len = Math.min(in.remaining(), out.remaining());
+                int n = convert(in.array(), in.arrayOffset() + in.position(),
+                                len, out.array(),
+                                out.arrayOffset() + out.position());
+                in.position(in.position() + len);
+                out.position(out.position() + n);
+                total += n;
+            }
+            return total;
+        }
+        int total = 0;
+        while (in.hasRemaining() && out.hasRemaining()) {
+            char ch = in.get();
+            if (!Character.isWhitespace(ch)) {
+                out.put(_alphabet.toChar(convert(_alphabet.toInt(ch))));
+                total += 1;
+            }
+        }
+        if (Metrics.ON) {
+            Metrics.CHARS.add(total);
+        }
+        return total;
+    }
+
+    /** Convert the LEN bytes of IN starting at OFF and store the results
+     *  in OUT starting at OUTOFF, byte for byte: unlike text, nothing is
+     *  skipped.  My alphabet must be bytes().  IN and OUT may be the same
+     *  array provided OUTOFF <= OFF. */
+    void convert(byte[] in, int off, int len, byte[] out, int outOff) {
+        if (!_alphabet.bytes()) {
+            throw new EnigmaException("alphabet is not the 256 bytes");
+        }
+        for (int i = 0; i < len; i++) {
+            out[outOff + i] = _alphabet.toByte(
+                convert(_alphabet.byteToInt(in[off + i])));
+        }
+        if (Metrics.ON) {
+            Metrics.CHARS.add(len);
+        }
+    }
+
+    /** Convert bytes from IN into OUT, as for convert(byte[], ...), until
+     *  IN is exhausted or OUT is full.  Both buffers' positions are
+     *  advanced past the bytes converted.  Returns the number of bytes
+     *  converted. */
+    int convert(ByteBuffer in, ByteBuffer out) {
+        int len = Math.min(in.remaining(), out.remaining());
+        if (in.hasArray() && out.hasArray() && !out.isReadOnly()) {
+            convert(in.array(), in.arrayOffset() + in.position(), len,
+                    out.array(), out.arrayOffset() + out.position());
+            in.position(in.position() + len);
+            out.position(out.position() + len);
+            return len;
+        }
+        if (!_alphabet.bytes()) {
+            throw new EnigmaException("alphabet is not the 256 bytes");
+        }
+        for (int i = 0; i < len; i++) {
+            out.put(_alphabet.toByte(convert(_alphabet.byteToInt(in.get()))));
+        }
+        if (Metrics.ON) {
+            Metrics.CHARS.add(len);
+        }
+        return len;
+    }
+
+    /** Convert the LEN characters of IN starting at OFF into OUT
+     *  starting at OUTOFF, as convert(char[], int, int, char[], int)
+     *  would if they came OFFSET letters into a message begun with my
+     *  rotors as they are now.  The rotor settings at OFFSET are found
+     *  directly (see advance), without converting the letters before it,
+     *  and I am left unchanged.  Returns the number of characters
+     *  stored. */
+    int convertAt(long offset, char[] in, int off, int len, char[] out,
+                  int outOff) {
+        return at(offset).convert(in, off, len, out, outOff);
+    }
+
+    /** Return the conversion of MSG as for convertAt(long, char[], int,
+     *  int, char[], int), if it came OFFSET letters into a message. */
+    String convertAt(long offset, String msg) {
+        return at(offset).convert(msg);
+    }
+
+    /** Convert the LEN bytes of IN starting at OFF into OUT starting at
+     *  OUTOFF, as convert(byte[], int, int, byte[], int) would if they
+     *  came OFFSET bytes into input begun with my rotors as they are
+     *  now.  As for convertAt on characters, I am left unchanged. */
+    void convertAt(long offset, byte[] in, int off, int len, byte[] out,
+                   int outOff) {
+        at(offset).convert(in, off, len, out, outOff);
+    }
+
+    /** Return a copy of me with my rotors advanced OFFSET steps. */
+    private Machine at(long offset) {
+        if (offset < 0) {
+            throw new EnigmaException("negative message offset");
+        }
+        Machine m = copy();
+        m.advance(offset);
+        return m;
+    }
+
+    /** Return a new machine just like me, with its own copies of all my
+     *  rotors in their current settings, so that it can be used by another
+     *  thread.  Permutations, which never change, are shared, as is my
+     *  spec, and with it its pool of cores. */
+    Machine copy() {
+        HashMap<Rotor, Rotor> copies = new HashMap<>();
+        ArrayList<Rotor> all = new ArrayList<>();
+        for (Rotor r : _theRotors) {
+            Rotor c = r.copy();
+            copies.put(r, c);
+            all.add(c);
+        }
+        Machine m = new Machine(_spec, all);
+        if (myrotors != null) {
+            m.myrotors = new Rotor[myrotors.length];
+            for (int i = 0; i < myrotors.length; i++) {
+                m.myrotors[i] = copies.get(myrotors[i]);
+            }
+            m._slots = _slots;
+        }
+        m._plugboard = _plugboard;
+        return m;
     }
 
     /** get all the rotors
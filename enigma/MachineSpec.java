@@ -0,0 +1,209 @@
+package enigma;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+
+/** The unchanging description of an Enigma machine: its alphabet, its
+ *  numbers of slots and pawls, and the permutations and notches of all
+ *  its available rotors.  A MachineSpec is immutable, so any number of
+ *  Sessions on any number of threads may share one.  Available rotors
+ *  are identified by their index, from 0, in the order given.
+ *  @author Manaal Siddiqui
+ */
+final class MachineSpec {
+
+    /** A specification for machines with alphabet ALPHA, NUMROTORS rotor
+     *  slots and PAWLS pawls, whose available rotors are copies of
+     *  ALLROTORS as they stand now. */
+    MachineSpec(Alphabet alpha, int numRotors, int pawls,
+                Collection<Rotor> allRotors) {
+        _alphabet = alpha;
+        _numRotors = numRotors;
+        _numPawls = pawls;
+        int n = allRotors.size();
+        _names = new String[n];
+        _permutations = new Permutation[n];
+        _rotates = new boolean[n];
+        _reflecting = new boolean[n];
+        _notches = new int[n][];
+        _notchTable = new boolean[n][];
+        _index = new HashMap<>();
+        int k = 0;
+        for (Rotor r : allRotors) {
+            _names[k] = r.name();
+            _permutations[k] = r.permutation();
+            _rotates[k] = r.rotates();
+            _reflecting[k] = r.reflecting();
+            _notches[k] = r.notches();
+            _notchTable[k] = new boolean[alpha.size()];
+            for (int posn : _notches[k]) {
+                _notchTable[k][posn] = true;
+            }
+            _index.put(r.name().toUpperCase(), k);
+            k += 1;
+        }
+    }
+
+    /** Return my alphabet. */
+    Alphabet alphabet() {
+        return _alphabet;
+    }
+
+    /** Return the number of rotor slots in my machines. */
+    int numRotors() {
+        return _numRotors;
+    }
+
+    /** Return the number of pawls in my machines. */
+    int numPawls() {
+        return _numPawls;
+    }
+
+    /** Return the number of available rotors. */
+    int numAvailable() {
+        return _names.length;
+    }
+
+    /** Return the index of the available rotor named NAME (ignoring
+     *  case), or -1 if there is none. */
+    int index(String name) {
+        Integer k = _index.get(name.toUpperCase());
+        return k == null ? -1 : k;
+    }
+
+    /** Return the name of rotor R. */
+    String name(int r) {
+        return _names[r];
+    }
+
+    /** Return the permutation of rotor R in its 0 position. */
+    Permutation permutation(int r) {
+        return _permutations[r];
+    }
+
+    /** Return true iff rotor R has a ratchet. */
+    boolean rotates(int r) {
+        return _rotates[r];
+    }
+
+    /** Return true iff rotor R is a reflector. */
+    boolean reflecting(int r) {
+        return _reflecting[r];
+    }
+
+    /** Return the settings at which rotor R is at a notch, in increasing
+     *  order.  The result is shared and must not be modified. */
+    int[] notches(int r) {
+        return _notches[r];
+    }
+
+    /** Return true iff rotor R is at a notch at setting POSN. */
+    boolean atNotch(int r, int posn) {
+        return _notchTable[r][posn];
+    }
+
+    /** Return every way of filling my slots with distinct available
+     *  rotors, as arrays of rotor indices by slot: a reflector in slot
+     *  0, rotors without ratchets in the other slots left of the pawls,
+     *  and rotors with ratchets in the rest. */
+    int[][] rotorOrders() {
+        ArrayList<int[]> orders = new ArrayList<>();
+        rotorOrders(new int[_numRotors], 0, orders);
+        return orders.toArray(new int[0][]);
+    }
+
+    /** Add to ORDERS every way of filling slots K and after of SLOTS
+     *  as for rotorOrders, given the rotors already in the slots before
+     *  K. */
+    private void rotorOrders(int[] slots, int k, ArrayList<int[]> orders) {
+        if (k == slots.length) {
+            orders.add(slots.clone());
+            return;
+        }
+        int first = slots.length - _numPawls;
+        for (int r = 0; r < _names.length; r++) {
+            boolean fits = k == 0 ? _reflecting[r]
+                : !_reflecting[r] && _rotates[r] == (k >= first);
+            for (int j = 0; j < k && fits; j++) {
+                fits = slots[j] != r;
+            }
+            if (fits) {
+                slots[k] = r;
+                rotorOrders(slots, k + 1, orders);
+            }
+        }
+    }
+
+    /** Return the wirings of all my rotors in one table: the image
+     *  under rotor r of k modulo the alphabet size is at
+     *  [r * 2 * size + k], for 0 <= k < 2 * size, so that an index
+     *  shifted by a rotor setting needs no reduction before lookup.  The
+     *  table is built on first use, and is shared and must not be
+     *  modified. */
+    int[] forwardWiring() {
+        wire();
+        return _forwardWiring;
+    }
+
+    /** Return the inverses of the rotor wirings, laid out as for
+     *  forwardWiring. */
+    int[] inverseWiring() {
+        wire();
+        return _inverseWiring;
+    }
+
+    /** Return the pool of cores (see CorePool) shared by all machines
+     *  built to me.  It is created on first use. */
+    synchronized CorePool cores() {
+        if (_cores == null) {
+            _cores = new CorePool(this, CorePool.CAPACITY);
+        }
+        return _cores;
+    }
+
+    /** Build _forwardWiring and _inverseWiring, if not done already. */
+    private synchronized void wire() {
+        if (_forwardWiring != null) {
+            return;
+        }
+        int size = _alphabet.size();
+        int[] forward = new int[_names.length * 2 * size];
+        int[] inverse = new int[forward.length];
+        for (int r = 0; r < _names.length; r++) {
+            for (int k = 0; k < 2 * size; k++) {
+                forward[r * 2 * size + k] = _permutations[r].permute(k % size);
+                inverse[r * 2 * size + k] = _permutations[r].invert(k % size);
+            }
+        }
+        _inverseWiring = inverse;
+        _forwardWiring = forward;
+    }
+
+    /** My alphabet. */
+    private final Alphabet _alphabet;
+    /** Number of rotor slots. */
+    private final int _numRotors;
+    /** Number of pawls. */
+    private final int _numPawls;
+    /** Names of the available rotors. */
+    private final String[] _names;
+    /** Permutations of the available rotors. */
+    private final Permutation[] _permutations;
+    /** Which available rotors have ratchets. */
+    private final boolean[] _rotates;
+    /** Which available rotors are reflectors. */
+    private final boolean[] _reflecting;
+    /** Notch settings of the available rotors, in increasing order. */
+    private final int[][] _notches;
+    /** _notchTable[r][p] is true iff rotor r is at a notch at setting p. */
+    private final boolean[][] _notchTable;
+    /** Index of each available rotor, by upper-case name. */
+    private final HashMap<String, Integer> _index;
+    /** Table returned by forwardWiring, or null if not yet built. */
+    private int[] _forwardWiring;
+    /** Table returned by inverseWiring, or null if not yet built. */
+    private int[] _inverseWiring;
+    /** Pool returned by cores, or null if not yet created. */
+    private CorePool _cores;
+}
@@ -0,0 +1,276 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+import static enigma.TestMachines.*;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.util.ArrayList;
+
+/** The suite of all JUnit tests for the Machine class.
+ *  @author Manaal Siddiqui
+ */
+public class MachineTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** The standard upper-case alphabet. */
+    private Alphabet alpha = new Alphabet();
+
+    /** Return navalMachine() set up as for "* B Beta III IV I AXLE" with
+     *  plugboard PLUGS. */
+    private Machine setUp(String plugs) {
+        Machine m = navalMachine();
+        m.insertRotors(new String[] {"B", "Beta", "III", "IV", "I"});
+        m.setRotors("AXLE");
+        m.setPlugboard(new Permutation(plugs, alpha));
+        return m;
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void testConvertMessage() {
+        Machine m = setUp("");
+        assertEquals("HYIHLBKOMLIUYDCMPPSFSZW",
+                     m.convert("FROM HIS SHOULDER HIAWATHA"));
+    }
+
+    @Test
+    public void testConvertCharArrayInPlace() {
+        Machine m = setUp("");
+        char[] buf = "xxFROM HIS SHOULDER HIAWATHA".toCharArray();
+        int n = m.convert(buf, 2, buf.length - 2, buf, 0);
+        assertEquals("HYIHLBKOMLIUYDCMPPSFSZW", new String(buf, 0, n));
+    }
+
+    @Test
+    public void testConvertCharBuffers() {
+        Machine m = setUp("");
+        CharBuffer in = CharBuffer.wrap("FROM HIS SHOULDER HIAWATHA");
+        CharBuffer out = CharBuffer.allocate(10);
+        StringBuilder result = new StringBuilder();
+        while (in.hasRemaining()) {
+            m.convert(in, out);
+            out.flip();
+            result.append(out);
+            out.clear();
+        }
+        assertEquals("HYIHLBKOMLIUYDCMPPSFSZW", result.toString());
+    }
+
+    @Test
+    public void testConvertRepeatsAfterReset() {
+        Machine m = setUp("");
+        String first = m.convert("FROMHISSHOULDERHIAWATHA");
+        m.setRotors("AXLE");
+        assertEquals(first, m.convert("FROMHISSHOULDERHIAWATHA"));
+    }
+
+    @Test
+    public void testCopyIsIndependent() {
+        Machine m = setUp("");
+        Machine copy = m.copy();
+        assertSame(m.spec(), copy.spec());
+        assertEquals("HYIHLBKOMLIUYDCMPPSFSZW",
+                     m.convert("FROM HIS SHOULDER HIAWATHA"));
+        assertEquals("HYIHLBKOMLIUYDCMPPSFSZW",
+                     copy.convert("FROM HIS SHOULDER HIAWATHA"));
+        for (int i = 0; i < m.numRotors(); i++) {
+            assertNotSame(m.getRotors()[i], copy.getRotors()[i]);
+            assertEquals(m.getRotors()[i].setting(),
+                         copy.getRotors()[i].setting());
+        }
+    }
+
+    @Test
+    public void testAdvanceMatchesStepping() {
+        Machine m = setUp("");
+        Machine stepped = m.copy();
+        for (int steps = 0; steps < 20000; steps += 1) {
+            Machine jumped = m.copy();
+            jumped.advance(steps);
+            for (int i = 0; i < m.numRotors(); i++) {
+                assertEquals("after " + steps + " steps",
+                             stepped.getRotors()[i].setting(),
+                             jumped.getRotors()[i].setting());
+            }
+            stepped.moveRotors();
+        }
+    }
+
+    @Test
+    public void testConvertAt() {
+        Machine m = setUp("(AQ) (EP)");
+        StringBuilder msg = new StringBuilder();
+        for (int i = 0; i < 20000; i++) {
+            msg.append((char) ('A' + (i * 7 + i / 26) % 26));
+        }
+        String whole = m.copy().convert(msg.toString());
+        for (int offset : new int[] {0, 1, 675, 16899, 19000}) {
+            String window = msg.substring(offset, offset + 1000);
+            assertEquals("at " + offset,
+                         whole.substring(offset, offset + 1000),
+                         m.convertAt(offset, window));
+        }
+        assertEquals(whole.substring(0, 5), m.convert(msg.substring(0, 5)));
+    }
+
+    @Test
+    public void testConvertParallel() {
+        Machine m = setUp("(AQ) (EP)");
+        Machine seq = m.copy();
+        char[] msg = new char[5 * Session.PARALLEL_GRAIN + 7];
+        for (int i = 0; i < msg.length; i++) {
+            msg[i] = i % 11 == 0 ? ' ' : (char) ('A' + (i * 7) % 26);
+        }
+        char[] expected = new char[msg.length];
+        char[] actual = new char[msg.length];
+        int n = seq.convert(msg, 0, msg.length, expected, 0);
+        assertEquals(n, m.convertParallel(msg, 0, msg.length, actual, 0));
+        assertArrayEquals(expected, actual);
+        assertEquals(seq.convert("FROMHISSHOULDER"),
+                     m.convert("FROMHISSHOULDER"));
+    }
+
+    @Test
+    public void testPlugboardChangeClearsCache() {
+        Machine m = setUp("");
+        m.convert("FROMHISSHOULDERHIAWATHA");
+        m.setRotors("AXLE");
+        m.setPlugboard(new Permutation("(BZ) (AR) (PD) (TQ)", alpha));
+        assertEquals("HOIHLZKOMLIUEPHMDESOKBJ",
+                     m.convert("FROM HIS SHOULDER HIAWATHA"));
+    }
+
+    @Test
+    public void testInsertRotorsIgnoresCase() {
+        Machine m = navalMachine();
+        m.insertRotors(new String[] {"b", "BETA", "iii", "IV", "I"});
+        m.setRotors("AXLE");
+        m.setPlugboard(new Permutation("", alpha));
+        assertEquals("HYIHLBKOMLIUYDCMPPSFSZW",
+                     m.convert("FROM HIS SHOULDER HIAWATHA"));
+        assertEquals("Beta", m.getRotors()[1].name());
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void testInsertRotorsDuplicate() {
+        navalMachine().insertRotors(
+            new String[] {"B", "Beta", "III", "iii", "I"});
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void testInsertRotorsBadName() {
+        navalMachine().insertRotors(
+            new String[] {"B", "Beta", "III", "V", "I"});
+    }
+
+    /** Return S with each upper-case letter replaced by the
+     *  corresponding mathematical bold capital, a supplementary
+     *  character. */
+    private static String wide(String s) {
+        StringBuilder result = new StringBuilder();
+        for (char ch : s.toCharArray()) {
+            if (ch >= 'A' && ch <= 'Z') {
+                result.appendCodePoint(0x1d400 + ch - 'A');
+            } else {
+                result.append(ch);
+            }
+        }
+        return result.toString();
+    }
+
+    @Test
+    public void testSupplementaryAlphabet() {
+        Alphabet w = new Alphabet(wide("ABCDEFGHIJKLMNOPQRSTUVWXYZ"));
+        ArrayList<Rotor> all = new ArrayList<>();
+        all.add(new MovingRotor("I", new Permutation(wide(
+            "(AELTPHQXRU) (BKNW) (CMOY) (DFG) (IV) (JZ) (S)"), w),
+                                wide("Q")));
+        all.add(new MovingRotor("III", new Permutation(wide(
+            "(ABDHPEJT) (CFLVMZOYQIRWUKXSG) (N)"), w), wide("V")));
+        all.add(new MovingRotor("IV", new Permutation(wide(
+            "(AEPLIYWCOXMRFZBSTGJQNH) (DV) (KU)"), w), wide("J")));
+        all.add(new FixedRotor("Beta", new Permutation(wide(
+            "(ALBEVFCYODJWUGNMQTZSKPR) (HIX)"), w)));
+        all.add(new Reflector("B", new Permutation(wide(
+            "(AE) (BN) (CK) (DQ) (FU) (GY) (HW) (IJ) (LO) (MP) (RX) (SZ) (TV)"),
+            w)));
+        Machine m = new Machine(w, 5, 3, all);
+        m.insertRotors(new String[] {"B", "Beta", "III", "IV", "I"});
+        m.setRotors(wide("AXLE"));
+        m.setPlugboard(new Permutation(wide("(AQ) (EP)"), w));
+        Machine plain = setUp("(AQ) (EP)");
+        String msg = "FROM HIS SHOULDER HIAWATHA";
+        assertEquals(wide(plain.convert(msg)), m.convert(wide(msg)));
+        Machine c = m.copy();
+        assertEquals(wide(plain.convert(msg)), c.convert(wide(msg)));
+        assertEquals(wide(plain.convert(msg)),
+                     c.session().convert(wide(msg)));
+    }
+    /** Return a five-slot, three-pawl machine over all 256 bytes, set
+     *  up as for "* B Beta III IV I AXLE". */
+    private Machine bytes() {
+        char[] all = new char[Alphabet.BYTES];
+        StringBuilder cycle = new StringBuilder();
+        String[] pairs = new String[Alphabet.BYTES / 2];
+        for (int i = 0; i < all.length; i++) {
+            all[i] = (char) i;
+            cycle.append((char) (i * 77 % Alphabet.BYTES));
+            if (i % 2 == 1) {
+                pairs[i / 2] = new String(all, i - 1, 2);
+            }
+        }
+        Alphabet b = new Alphabet(new String(all));
+        String[] shift = {cycle.toString()};
+        ArrayList<Rotor> rotors = new ArrayList<>();
+        rotors.add(new MovingRotor("I", new Permutation(shift, b), "Q"));
+        rotors.add(new MovingRotor("III", new Permutation(shift, b), "\0"));
+        rotors.add(new MovingRotor("IV", new Permutation(shift, b), "J "));
+        rotors.add(new FixedRotor("Beta", new Permutation(shift, b)));
+        rotors.add(new Reflector("B", new Permutation(pairs, b)));
+        Machine m = new Machine(b, 5, 3, rotors);
+        m.insertRotors(new String[] {"B", "Beta", "III", "IV", "I"});
+        m.setRotors("AXLE");
+        m.setPlugboard(new Permutation(new String[] {"(\n", "A\u00ff"}, b));
+        return m;
+    }
+
+    @Test
+    public void testConvertBytes() {
+        byte[] data = new byte[5000];
+        char[] text = new char[data.length];
+        for (int i = 0; i < data.length; i++) {
+            text[i] = (char) ((i * 31 + i / 7) & 0xff);
+            if (Character.isWhitespace(text[i])) {
+                text[i] = 'A';
+            }
+            data[i] = (byte) text[i];
+        }
+        byte[] enc = new byte[data.length];
+        bytes().convert(data, 0, data.length, enc, 0);
+        String expected = bytes().convert(new String(text));
+        for (int i = 0; i < data.length; i++) {
+            assertEquals(expected.charAt(i), (char) (enc[i] & 0xff));
+        }
+        ByteBuffer in = ByteBuffer.allocateDirect(data.length);
+        in.put(enc).flip();
+        ByteBuffer out = ByteBuffer.allocate(data.length);
+        assertEquals(data.length, bytes().convert(in, out));
+        assertArrayEquals(data, out.array());
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void testConvertBytesNeedsByteAlphabet() {
+        byte[] data = new byte[3];
+        setUp("").convert(data, 0, 3, data, 0);
+    }
+}
@@ -1,10 +1,39 @@
 package enigma;
 
+import java.io.CharArrayWriter;
 import java.io.File;
 import java.io.IOException;
-import java.io.PrintStream;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
 
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.file.Files;
+import java.nio.file.OpenOption;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+import static java.nio.channels.FileChannel.MapMode.READ_ONLY;
+import static java.nio.file.StandardOpenOption.*;
+
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.Scanner;
 import java.util.NoSuchElementException;
 
@@ -16,7 +45,48 @@ import static enigma.EnigmaException.*;
 public final class Main {
 
     /** Process a sequence of encryptions and decryptions, as
-     *  specified by ARGS, where 1 <= ARGS.length <= 3.
+     *  specified by ARGS, where 1 <= ARGS.length <= 3 after any leading
+     *  options.  Option --mmap, which requires both an input and an
+     *  output file, reads the input through a memory mapping.  Option
+     *  --parallel[=N] converts the messages following each setting line
+     *  concurrently on N threads (by default, one per processor), and
+     *  splits long messages among threads as well.  Option
+     *  --bytes=SETTING treats the input as raw bytes rather than text: it
+     *  is converted byte for byte, with nothing skipped or grouped, by a
+     *  machine set up by the setting line SETTING; it cannot be combined
+     *  with --parallel.  The configuration's alphabet must then consist of
+     *  the 256 chars with codes 0-255, and in the configuration and
+     *  SETTING, \xHH stands for the char with hex code HH and \\ for a
+     *  backslash.  Option --crib=CRIB attacks the input instead of
+     *  converting it: the input is taken to be one ciphertext whose first
+     *  letters encipher CRIB, and every rotor order and setting at which
+     *  that is possible (see Bombe) is written out as a setting line,
+     *  with progress reported on the standard error.  It searches on as
+     *  many threads as --parallel gives, or by default one per
+     *  processor.  Option --search[=KEEP] is a ciphertext-only attack on
+     *  the input (see KeySearch), which writes the KEEP (by default 10)
+     *  best keys it finds as setting lines, best first, on as many
+     *  threads as for --crib.  It scores decrypts by their index of
+     *  coincidence or, with --ngrams=FILE, by the n-gram statistics of
+     *  the sample text in FILE.  With --rings=K it also tries every ring
+     *  setting of the rightmost K rotors, and with --checkpoint=FILE it
+     *  saves its progress in FILE and picks up from there when run
+     *  again.  With --steckers as well as --ngrams,
+     *  it then recovers a plugboard for each key it keeps (see
+     *  PlugboardSolver), and writes the keys with their plugboards,
+     *  best first by the final score.  Option --range=FROM-TO converts
+     *  only part of the input: with --bytes, bytes FROM to TO-1 of it;
+     *  otherwise letters FROM to TO-1 (counting from 0, and skipping
+     *  whitespace) of the message following its first setting line,
+     *  which are written as one line.  The rotor settings at FROM are
+     *  found directly (see Machine.advance), so the input before FROM
+     *  is skipped rather than converted.  Option --keystream converts
+     *  with a Keystream, so that the rotors are stepped on another thread
+     *  ahead of the input; it cannot be combined with --parallel.  Option
+     *  --metrics[=SECONDS] turns on measuring (see Metrics): the
+     *  measurements are made available through JMX, written on the
+     *  standard error at the end and, if SECONDS is given, every SECONDS
+     *  seconds as well.
      *  ARGS[0] is the name of a configuration file.
      *  ARGS[1] is optional; when present, it names an input file
      *  containing messages.  Otherwise, input comes from the standard
@@ -30,22 +100,176 @@ public final class Main {
             return;
         } catch (EnigmaException excp) {
             System.err.printf("Error: %s%n", excp.getMessage());
+        } finally {
+            if (Metrics.ON) {
+                Metrics.dump(System.err);
+            }
         }
         System.exit(1);
     }
 
     /** Check ARGS and open the necessary files (see comment on main). */
     Main(String[] args) {
+        boolean metrics = false;
+        int k;
+        for (k = 0; k < args.length && args[k].startsWith("--"); k += 1) {
+            if (args[k].equals("--mmap")) {
+                _mmap = true;
+            } else if (args[k].equals("--parallel")) {
+                _threads = Runtime.getRuntime().availableProcessors();
+            } else if (args[k].startsWith("--parallel=")) {
+                _threads = parseCount(args[k]);
+            } else if (args[k].startsWith("--bytes=")) {
+                _byteSetting = args[k].substring("--bytes=".length());
+            } else if (args[k].startsWith("--crib=")) {
+                _crib = args[k].substring("--crib=".length());
+            } else if (args[k].equals("--search")) {
+                _keep = KEEP;
+            } else if (args[k].startsWith("--search=")) {
+                _keep = parseCount(args[k]);
+            } else if (args[k].startsWith("--rings=")) {
+                _ringSlots = parseCount(args[k]);
+            } else if (args[k].startsWith("--ngrams=")) {
+                _ngrams = Paths.get(args[k].substring("--ngrams=".length()));
+            } else if (args[k].equals("--steckers")) {
+                _steckers = true;
+            } else if (args[k].equals("--metrics")) {
+                System.setProperty("enigma.metrics", "true");
+                metrics = true;
+            } else if (args[k].startsWith("--metrics=")) {
+                System.setProperty("enigma.metrics", "true");
+                metrics = true;
+                _metricsInterval = parseCount(args[k]);
+            } else if (args[k].equals("--keystream")) {
+                _useKeystream = true;
+            } else if (args[k].startsWith("--range=")) {
+                parseRange(args[k]);
+            } else if (args[k].startsWith("--checkpoint=")) {
+                _checkpoint =
+                    Paths.get(args[k].substring("--checkpoint=".length()));
+            } else {
+                throw error("unknown option %s", args[k]);
+            }
+        }
+        args = Arrays.copyOfRange(args, k, args.length);
+        if ((_crib != null || _keep > 0)
+            && (_mmap || _byteSetting != null)) {
+            throw error("--crib and --search cannot be used with --mmap "
+                        + "or --bytes");
+        }
+        if (_rangeTo >= 0
+            && (_crib != null || _keep > 0
+                || (_mmap && _byteSetting == null))) {
+            throw error("--range cannot be used with --crib, --search, "
+                        + "or --mmap without --bytes");
+        }
+        if (_threads > 0 && _byteSetting != null) {
+            throw error("--parallel cannot be used with --bytes");
+        }
+        if (_useKeystream
+            && (_threads > 0 || _crib != null || _keep > 0
+                || _rangeTo >= 0)) {
+            throw error("--keystream cannot be used with --parallel, "
+                        + "--crib, --search or --range");
+        }
+        if (_steckers && (_keep == 0 || _ngrams == null)) {
+            throw error("--steckers needs --search and --ngrams");
+        }
+        if (metrics && !Metrics.ON) {
+            throw error("--metrics given after measuring was fixed off");
+        }
+        if (Metrics.ON) {
+            Metrics.register();
+            if (_metricsInterval > 0) {
+                Metrics.every(_metricsInterval, System.err);
+            }
+        }
+        if (_mmap && args.length < 3) {
+            throw error("--mmap needs input and output files");
+        }
         _config = getInput(args[0]);
+        if (_byteSetting != null) {
+            openBytes(args);
+            return;
+        }
+        if (_mmap) {
+            _mapped = getChannel(args[1]);
+            FileChannel out = getChannel(args[2], CREATE, WRITE,
+                                         TRUNCATE_EXISTING);
+            _output = new GroupWriter(new ChannelWriter(out, CHARSET));
+            return;
+        }
         if (args.length > 1) {
-            _input = getInput(args[1]);
+            _input = getReader(args[1]);
+        } else {
+            _input = Channels.newReader(Channels.newChannel(System.in),
+                                        CHARSET.name());
+        }
+        if (args.length > 2) {
+            _output = new GroupWriter(getOutput(args[2]));
+        } else {
+            _output = new GroupWriter(new OutputStreamWriter(System.out,
+                                                             CHARSET));
+        }
+    }
+
+    /** Open the input and output channels for --bytes from ARGS, as
+     *  described for main. */
+    private void openBytes(String[] args) {
+        if (_mmap) {
+            _mapped = getChannel(args[1]);
+        } else if (args.length > 1) {
+            _inBytes = getChannel(args[1]);
         } else {
-            _input = new Scanner(System.in);
+            _inBytes = Channels.newChannel(System.in);
         }
         if (args.length > 2) {
-            _output = getOutput(args[2]);
+            _outBytes = getChannel(args[2], CREATE, WRITE,
+                                   TRUNCATE_EXISTING);
         } else {
-            _output = System.out;
+            _outBytes = Channels.newChannel(System.out);
+        }
+    }
+
+    /** A Main that converts one segment of PARENT's input---the lines
+     *  following a setting line---with SESSION, which has already been
+     *  set up, writing the results to OUT. */
+    private Main(Main parent, Session session, Writer out) {
+        _alphabet = parent._alphabet;
+        _session = session;
+        _output = new GroupWriter(out, SEGMENT_BLOCK, false);
+        _hasSetting = true;
+        _sawToken = true;
+        _threads = parent._threads;
+    }
+
+    /** Return the positive count given after the '=' in OPTION. */
+    private static int parseCount(String option) {
+        try {
+            int n = Integer.parseInt(option.substring(option.indexOf('=')
+                                                      + 1));
+            if (n > 0) {
+                return n;
+            }
+        } catch (NumberFormatException excp) {
+            /* Fall through to report the error. */
+        }
+        throw error("bad option %s", option);
+    }
+
+    /** Set _rangeFrom and _rangeTo from OPTION, which is --range=FROM-TO
+     *  with 0 <= FROM <= TO. */
+    private void parseRange(String option) {
+        String range = option.substring("--range=".length());
+        int dash = range.indexOf('-');
+        try {
+            _rangeFrom = Long.parseLong(range.substring(0, dash));
+            _rangeTo = Long.parseLong(range.substring(dash + 1));
+        } catch (NumberFormatException | IndexOutOfBoundsException excp) {
+            throw error("bad option %s", option);
+        }
+        if (_rangeFrom < 0 || _rangeTo < _rangeFrom) {
+            throw error("bad option %s", option);
         }
     }
 
@@ -59,11 +283,36 @@ public final class Main {
         }
     }
 
-    /** Return a PrintStream writing to the file named NAME.
+    /** Return a Reader streaming from the file named NAME through a
+     *  file channel.
+     * @param name */
+    private Reader getReader(String name) {
+        try {
+            return Channels.newReader(FileChannel.open(Paths.get(name)),
+                                      CHARSET.name());
+        } catch (IOException excp) {
+            throw error("could not open %s", name);
+        }
+    }
+
+    /** Return a channel for the file named NAME, opened with OPTIONS
+     *  (by default, for reading). */
+    private FileChannel getChannel(String name, OpenOption... options) {
+        try {
+            return FileChannel.open(Paths.get(name), options);
+        } catch (IOException excp) {
+            throw error("could not open %s", name);
+        }
+    }
+
+    /** Return a Writer writing to the file named NAME.
      * @param name1 */
-    private PrintStream getOutput(String name1) {
+    private Writer getOutput(String name1) {
         try {
-            return new PrintStream(new File(name1));
+            return Channels.newWriter(FileChannel.open(Paths.get(name1),
+                                                       CREATE, WRITE,
+                                                       TRUNCATE_EXISTING),
+                                      CHARSET.name());
         } catch (IOException excp) {
             throw error("could not open %s", name1);
         }
@@ -71,27 +320,588 @@ public final class Main {
 
     /** Configure an Enigma machine from the contents of configuration
      *  file _config and apply it to the messages in _input, sending the
-     *  results to _output. */
+     *  results to _output.  Input is read in chunks of CHUNK characters
+     *  and long message lines are converted a chunk at a time, so memory
+     *  use does not depend on the size of the input. */
     private void process() {
-        Machine enigma = readConfig();
-        if (!_input.hasNext()) {
-            throw new EnigmaException("Input empty.");
+        _enigma = readConfig();
+        if (_byteSetting != null) {
+            processBytes();
+            return;
+        } else if (_crib != null) {
+            processCrib();
+            return;
+        } else if (_keep > 0) {
+            processSearch();
+            return;
+        } else if (_rangeTo >= 0) {
+            processRange();
+            return;
+        }
+        char[] chunk = new char[CHUNK];
+        if (_threads > 0) {
+            _pool = Executors.newFixedThreadPool(_threads);
+        }
+        try {
+            if (_mapped != null) {
+                processMapped(chunk);
+            } else {
+                int n;
+                while ((n = _input.read(chunk)) != -1) {
+                    processChunk(chunk, n);
+                }
+            }
+            if (_line.length() > 0 || _streaming) {
+                endLine();
+            }
+            submitSegment();
+            writeSegments(0);
+            if (!_sawToken) {
+                throw new EnigmaException("Input empty.");
+            }
+        } catch (IOException excp) {
+            throw error("could not read input");
+        } catch (EnigmaException excp) {
+            writeSegments(0);
+            throw excp;
+        } finally {
+            if (_pool != null) {
+                _pool.shutdownNow();
+            }
+            if (_keystream != null) {
+                _keystream.close();
+            }
+            if (_mmap) {
+                _output.close();
+            } else {
+                _output.flush();
+            }
+        }
+    }
+
+    /** Search for the settings at which the input enciphers _crib, as
+     *  described for main. */
+    private void processCrib() {
+        Bombe bombe = new Bombe(_enigma.spec(), letters(readAll()),
+                                letters(_crib));
+        long total = bombe.positions();
+        try {
+            bombe.search(searchThreads(), new Bombe.Listener() {
+                @Override
+                public void stop(Bombe.Stop stop) {
+                    writeLine(stop.toString());
+                    _output.flush();
+                }
+
+                @Override
+                public void progress(long positions, long nanos) {
+                    reportProgress(positions, 0, total, "positions", nanos);
+                }
+            });
+        } finally {
+            _output.flush();
+        }
+    }
+
+    /** Search for the keys under which the input decrypts best, as
+     *  described for main. */
+    private void processSearch() {
+        Scorer scorer;
+        if (_ngrams == null) {
+            scorer = new Coincidence(_alphabet.size());
+        } else {
+            try {
+                scorer = new Ngrams(_alphabet, Files.readString(_ngrams));
+            } catch (IOException excp) {
+                throw error("could not read %s", _ngrams);
+            }
+        }
+        int[] cipher = letters(readAll());
+        KeySearch search = new KeySearch(_enigma.spec(), cipher, scorer,
+                                         _ringSlots, _keep);
+        long total = search.keys();
+        List<KeySearch.Candidate> best =
+            search.search(searchThreads(), (keys, nanos) ->
+                          reportProgress(keys, search.resumed(), total,
+                                         "keys", nanos),
+                          _checkpoint);
+        if (_steckers) {
+            best = solvePlugboards(best, cipher, (Ngrams) scorer);
+        }
+        for (KeySearch.Candidate c : best) {
+            System.err.printf("%.6g %s%n", c.score(), c);
+            writeLine(c.toString());
         }
-        int count = 0;
+        _output.flush();
+    }
+
+    /** Return the keys KEYS with plugboards recovered from CIPHER by
+     *  scoring decrypts with NGRAMS, best first. */
+    private List<KeySearch.Candidate> solvePlugboards(
+        List<KeySearch.Candidate> keys, int[] cipher, Ngrams ngrams) {
+        Permutation none = new Permutation("", _alphabet);
+        ArrayList<KeySearch.Candidate> result = new ArrayList<>();
+        for (KeySearch.Candidate c : keys) {
+            PlugboardSolver solver =
+                new PlugboardSolver(c.session(none), cipher, ngrams);
+            solver.solve(none);
+            result.add(c.withPlugboard(solver.cycles(), solver.score()));
+        }
+        result.sort((x, y) -> Double.compare(y.score(), x.score()));
+        return result;
+    }
+
+    /** Convert letters _rangeFrom to _rangeTo-1 of the message following
+     *  the first setting line of the input, as described for main.  The
+     *  letters before them are only counted, and reading stops after
+     *  the last of them. */
+    private void processRange() {
+        char[] chunk = new char[CHUNK];
+        char[] window = new char[CHUNK];
+        char[] converted = new char[2 * CHUNK];
+        StringBuilder setting = new StringBuilder();
         boolean hasSetting = false;
-        while (_input.hasNextLine()) {
-            String input = _input.nextLine();
-            if (input.indexOf('*') != -1) {
-                hasSetting = true;
-                setUp(enigma, input);
-                count++;
-            } else if (input.isEmpty()) {
-                _output.println();
-            } else if (!hasSetting) {
-                throw new EnigmaException("message without setting.");
+        long letters = 0;
+        int w = 0;
+        try {
+            int n;
+        reading:
+            while ((n = _input.read(chunk)) != -1) {
+                for (int i = 0; i < n; i++) {
+                    char ch = chunk[i];
+                    if (hasSetting && ch == '*') {
+                        break reading;
+                    } else if (!hasSetting && !isLineEnd(ch)) {
+                        setting.append(ch);
+                    } else if (!hasSetting) {
+                        hasSetting = setUpRange(setting);
+                    } else if (!Character.isWhitespace(ch)) {
+                        if (!Character.isLowSurrogate(ch)) {
+                            letters += 1;
+                        }
+                        if (letters > _rangeTo) {
+                            break reading;
+                        } else if (letters > _rangeFrom) {
+                            window[w++] = ch;
+                        }
+                        if (w >= CHUNK - 1 && !Character.isHighSurrogate(ch)) {
+                            int k = _enigma.convert(window, 0, w, converted, 0);
+                            _output.write(converted, 0, k);
+                            w = 0;
+                        }
+                    }
+                }
+            }
+            if (!hasSetting && !setUpRange(setting)) {
+                throw new EnigmaException("Input empty.");
+            }
+            int k = _enigma.convert(window, 0, w, converted, 0);
+            _output.write(converted, 0, k);
+            _output.endLine();
+        } catch (IOException excp) {
+            throw error("could not read input");
+        } finally {
+            _output.flush();
+        }
+    }
+
+    /** Set up _enigma from the setting line SETTING and advance it to
+     *  letter _rangeFrom, returning true, unless SETTING is blank, in
+     *  which case it is cleared and false returned. */
+    private boolean setUpRange(StringBuilder setting) {
+        if (setting.toString().isBlank()) {
+            setting.setLength(0);
+            return false;
+        }
+        setUp(_enigma, setting.toString());
+        _enigma.advance(_rangeFrom);
+        return true;
+    }
+
+    /** Return the whole of _input. */
+    private String readAll() {
+        StringBuilder text = new StringBuilder();
+        char[] chunk = new char[CHUNK];
+        try {
+            int n;
+            while ((n = _input.read(chunk)) != -1) {
+                text.append(chunk, 0, n);
+            }
+        } catch (IOException excp) {
+            throw error("could not read input");
+        }
+        return text.toString();
+    }
+
+    /** Return the number of threads for --crib or --search. */
+    private int searchThreads() {
+        return _threads > 0 ? _threads
+            : Runtime.getRuntime().availableProcessors();
+    }
+
+    /** Report on the standard error that DONE of TOTAL WHAT have been
+     *  tried, all but the first BASE of them in the last NANOS
+     *  nanoseconds. */
+    private static void reportProgress(long done, long base, long total,
+                                       String what, long nanos) {
+        System.err.printf("%d of %d %s, %.0f/s%n", done, total, what,
+                          (done - base) * 1e9 / Math.max(nanos, 1));
+    }
+
+    /** Write LINE to _output as it is, followed by a line terminator. */
+    private void writeLine(String line) {
+        char[] text = line.toCharArray();
+        _output.verbatim(text, 0, text.length);
+        _output.newline();
+    }
+
+    /** Return the letters of TEXT, skipping whitespace, as indices in
+     *  _alphabet. */
+    private int[] letters(String text) {
+        return text.codePoints()
+            .filter(c -> !Character.isWhitespace(c))
+            .map(c -> {
+                if (!_alphabet.containsCodePoint(c)) {
+                    throw error("character not in alphabet");
+                }
+                return _alphabet.codePointToInt(c);
+            }).toArray();
+    }
+
+    /** Convert the input as raw bytes, as for --bytes, a BYTE_BLOCK at a
+     *  time or, with --mmap, straight out of memory-mapped windows. */
+    private void processBytes() {
+        if (!_alphabet.bytes()) {
+            throw error("--bytes needs an alphabet of the 256 byte values");
+        }
+        setUp(_enigma, _byteSetting);
+        long from = 0, to = Long.MAX_VALUE;
+        if (_rangeTo >= 0) {
+            from = _rangeFrom;
+            to = _rangeTo;
+            _enigma.advance(from);
+        }
+        if (_useKeystream) {
+            _keystream = _enigma.keystream();
+        }
+        ByteBuffer buf = ByteBuffer.allocate(BYTE_BLOCK);
+        try {
+            if (_mapped != null) {
+                long size = Math.min(_mapped.size(), to);
+                for (long pos = from; pos < size; pos += WINDOW) {
+                    MappedByteBuffer window =
+                        _mapped.map(READ_ONLY, pos, Math.min(WINDOW,
+                                                             size - pos));
+                    while (window.hasRemaining()) {
+                        if (_keystream != null) {
+                            _keystream.convert(window, buf);
+                        } else {
+                            _enigma.convert(window, buf);
+                        }
+                        writeBytes(buf);
+                    }
+                }
+                _mapped.close();
             } else {
-                String output = enigma.convert(input);
-                printMessageLine(output);
+                long pos = skipBytes(from, buf);
+                while (pos < to) {
+                    buf.limit((int) Math.min(buf.capacity(), to - pos));
+                    if (_inBytes.read(buf) == -1) {
+                        break;
+                    }
+                    buf.flip();
+                    if (_keystream != null) {
+                        _keystream.convert(buf.array(), 0, buf.limit(),
+                                           buf.array(), 0);
+                    } else {
+                        _enigma.convert(buf.array(), 0, buf.limit(),
+                                        buf.array(), 0);
+                    }
+                    pos += buf.limit();
+                    buf.position(buf.limit());
+                    writeBytes(buf);
+                }
+            }
+            _outBytes.close();
+        } catch (IOException excp) {
+            throw error("could not convert input: %s", excp.getMessage());
+        } finally {
+            if (_keystream != null) {
+                _keystream.close();
+            }
+        }
+    }
+
+    /** Skip the first N bytes of _inBytes, using BUF to read them if
+     *  it is not a file, and return N. */
+    private long skipBytes(long n, ByteBuffer buf) throws IOException {
+        if (_inBytes instanceof FileChannel) {
+            ((FileChannel) _inBytes).position(n);
+            return n;
+        }
+        for (long pos = 0; pos < n; pos += buf.position()) {
+            buf.clear();
+            buf.limit((int) Math.min(buf.capacity(), n - pos));
+            if (_inBytes.read(buf) == -1) {
+                break;
+            }
+        }
+        buf.clear();
+        return n;
+    }
+
+    /** Write out the bytes put into BUF and clear it. */
+    private void writeBytes(ByteBuffer buf) throws IOException {
+        buf.flip();
+        if (Metrics.ON) {
+            Metrics.BYTES_IN.add(buf.remaining());
+            Metrics.BYTES_OUT.add(buf.remaining());
+        }
+        while (buf.hasRemaining()) {
+            _outBytes.write(buf);
+        }
+        buf.clear();
+    }
+
+    /** Decode the input file _mapped straight out of memory-mapped windows
+     *  of at most WINDOW bytes, processing it a CHUNK at a time. */
+    private void processMapped(char[] chunk) throws IOException {
+        CharsetDecoder decoder = CHARSET.newDecoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        CharBuffer chars = CharBuffer.wrap(chunk);
+        long size = _mapped.size();
+        for (long pos = 0; pos < size;) {
+            long len = Math.min(WINDOW, size - pos);
+            boolean last = pos + len == size;
+            MappedByteBuffer window = _mapped.map(READ_ONLY, pos, len);
+            CoderResult result;
+            do {
+                result = decoder.decode(window, chars, last);
+                processChunk(chunk, chars.position());
+                chars.clear();
+            } while (result.isOverflow());
+            pos = last ? size : pos + window.position();
+        }
+        decoder.flush(chars);
+        processChunk(chunk, chars.position());
+        _mapped.close();
+    }
+
+    /** Process the first N characters of CHUNK, which continue the input
+     *  from wherever the previous chunk left off. */
+    private void processChunk(char[] chunk, int n) {
+        if (Metrics.ON && _session == null) {
+            Metrics.CHARS_IN.add(n);
+        }
+        int start = 0;
+        for (int i = 0; i < n; i++) {
+            char ch = chunk[i];
+            if (ch == '\n' && _afterCR) {
+                _afterCR = false;
+                start = i + 1;
+                continue;
+            }
+            _afterCR = ch == '\r';
+            if (isLineEnd(ch)) {
+                linePart(chunk, start, i - start);
+                endLine();
+                start = i + 1;
+            } else if (!_sawToken && !Character.isWhitespace(ch)) {
+                _sawToken = true;
+                for (; _heldBlanks > 0; _heldBlanks -= 1) {
+                    _output.newline();
+                }
+                if (_orphan) {
+                    throw new EnigmaException("message without setting.");
+                }
+            }
+        }
+        linePart(chunk, start, n - start);
+    }
+
+    /** Return true iff CH terminates a line, as for Scanner.nextLine. */
+    private static boolean isLineEnd(char ch) {
+        return ch == '\n' || ch == '\r' || ch == '\u2028'
+            || ch == '\u2029' || ch == '\u0085';
+    }
+
+    /** Handle the LEN characters of BUF starting at OFF, which are the
+     *  next part of the current line.  Short lines are collected in _line
+     *  so that setting lines can be recognized; once a line grows past
+     *  CHUNK characters without a '*' it must be a message, and it is
+     *  converted and written as it arrives.  BUF may be overwritten. */
+    private void linePart(char[] buf, int off, int len) {
+        if (len == 0) {
+            return;
+        }
+        if (!_streaming) {
+            _line.append(buf, off, len);
+            if (_line.length() <= CHUNK || _line.indexOf("*") != -1
+                || _pool != null) {
+                return;
+            }
+            if (!_hasSetting) {
+                throw new EnigmaException("message without setting.");
+            }
+            _streaming = true;
+            buf = _line.toString().toCharArray();
+            off = 0;
+            len = buf.length;
+            _line.setLength(0);
+        }
+        for (int i = off; i < off + len; i++) {
+            if (buf[i] == '*') {
+                throw new EnigmaException("bad input format");
+            }
+        }
+        if (!_alphabet.bmp()) {
+            convertWide(buf, off, len);
+            return;
+        }
+        int n = convertInPlace(buf, off, len);
+        _output.write(buf, off, n);
+    }
+
+    /** Convert the LEN characters of BUF starting at OFF, which are the
+     *  next part of a streamed message line, for an alphabet that is not
+     *  bmp(), and write the result.  A high surrogate at the end is held
+     *  back in _line until the rest of its character arrives. */
+    private void convertWide(char[] buf, int off, int len) {
+        if (_line.length() > 0) {
+            _line.append(buf, off, len);
+            buf = _line.toString().toCharArray();
+            off = 0;
+            len = buf.length;
+            _line.setLength(0);
+        }
+        if (_streaming && len > 0
+            && Character.isHighSurrogate(buf[off + len - 1])) {
+            len -= 1;
+            _line.append(buf[off + len]);
+        }
+        if (_wide.length < 2 * len) {
+            _wide = new char[Math.max(2 * len, 2 * _wide.length)];
+        }
+        int n;
+        if (_session != null) {
+            n = _session.convert(buf, off, len, _wide, 0);
+        } else if (_keystream != null) {
+            n = _keystream.convert(buf, off, len, _wide, 0);
+        } else {
+            n = _enigma.convert(buf, off, len, _wide, 0);
+        }
+        _output.write(_wide, 0, n);
+    }
+
+    /** Convert the LEN characters of BUF starting at OFF in place,
+     *  skipping whitespace, and return the number of characters produced.
+     *  In parallel mode, long stretches are themselves split among
+     *  threads. */
+    private int convertInPlace(char[] buf, int off, int len) {
+        boolean split = _threads > 0 && len >= 2 * Session.PARALLEL_GRAIN;
+        if (_keystream != null) {
+            return _keystream.convert(buf, off, len, buf, off);
+        } else if (_session != null) {
+            return split ? _session.convertParallel(buf, off, len, buf, off)
+                : _session.convert(buf, off, len, buf, off);
+        }
+        return split ? _enigma.convertParallel(buf, off, len, buf, off)
+            : _enigma.convert(buf, off, len, buf, off);
+    }
+
+    /** Finish off the current line. */
+    private void endLine() {
+        if (_streaming) {
+            _streaming = false;
+            if (_line.length() > 0) {
+                convertWide(_scratch, 0, 0);
+            }
+            _output.endLine();
+            return;
+        }
+        int len = _line.length();
+        if (_line.indexOf("*") != -1) {
+            _hasSetting = true;
+            submitSegment();
+            setUp(_enigma, _line.toString());
+            if (_useKeystream) {
+                if (_keystream != null) {
+                    _keystream.close();
+                }
+                _keystream = _enigma.keystream();
+            }
+            if (_pool != null) {
+                _segment = new StringBuilder();
+            }
+        } else if (_segment != null) {
+            _segment.append(_line).append('\n');
+        } else if (len == 0 && !_sawToken) {
+            if (!_orphan) {
+                _heldBlanks += 1;
+            }
+        } else if (len == 0) {
+            _output.newline();
+        } else if (!_hasSetting && !_sawToken) {
+            _orphan = true;
+        } else if (!_hasSetting) {
+            throw new EnigmaException("message without setting.");
+        } else if (!_alphabet.bmp()) {
+            convertWide(_scratch, 0, 0);
+            _output.endLine();
+        } else {
+            if (_scratch.length < len) {
+                _scratch = new char[Math.max(len, 2 * _scratch.length)];
+            }
+            _line.getChars(0, len, _scratch, 0);
+            long start = Metrics.ON ? System.nanoTime() : 0;
+            printMessageLine(_scratch,
+                             convertInPlace(_scratch, 0, len));
+            if (Metrics.ON) {
+                Metrics.LINE_NANOS.record(System.nanoTime() - start);
+            }
+        }
+        _line.setLength(0);
+    }
+
+    /** Hand the lines collected in _segment, if any, to _pool for
+     *  conversion by a session in _enigma's current state, and write out the
+     *  results of earlier segments if too many are waiting. */
+    private void submitSegment() {
+        if (_segment == null) {
+            return;
+        }
+        char[] text = new char[_segment.length()];
+        _segment.getChars(0, text.length, text, 0);
+        _segment = null;
+        Session session = _enigma.session();
+        _pending.add(_pool.submit(() -> {
+            CharArrayWriter out = new CharArrayWriter();
+            Main worker = new Main(this, session, out);
+            worker.processChunk(text, text.length);
+            worker._output.flush();
+            return out.toCharArray();
+        }));
+        writeSegments(2 * _threads);
+    }
+
+    /** Write out, in order, the results of all but the last KEEP
+     *  segments submitted to _pool.  If a segment failed, abandon all
+     *  later ones and report its error. */
+    private void writeSegments(int keep) {
+        while (_pending.size() > keep) {
+            try {
+                char[] text = _pending.remove().get();
+                _output.verbatim(text, 0, text.length);
+            } catch (ExecutionException excp) {
+                _pending.clear();
+                if (excp.getCause() instanceof EnigmaException) {
+                    throw (EnigmaException) excp.getCause();
+                }
+                throw error("conversion failed: %s", excp.getCause());
+            } catch (InterruptedException excp) {
+                _pending.clear();
+                throw error("interrupted");
             }
         }
     }
@@ -99,13 +909,15 @@ public final class Main {
     /** Return an Enigma machine configured from the contents of configuration
      *  file _config. */
     private Machine readConfig() {
+        long start = Metrics.ON ? System.nanoTime() : 0;
         try {
             if (!_config.hasNext()) {
                 throw new EnigmaException("wrong configuration format");
             }
             ArrayList<Rotor> everyRotor = new ArrayList<>();
-            String alphabet = _config.next();
+            String alphabet = decode(_config.next());
             _alphabet = new Alphabet(alphabet);
+            _plugboards = new PlugboardCache(_alphabet);
             int numRotors = _config.nextInt();
             int pawls = _config.nextInt();
             while (_config.hasNext()) {
@@ -115,6 +927,10 @@ public final class Main {
             return new Machine(_alphabet, numRotors, pawls, everyRotor);
         } catch (NoSuchElementException excp) {
             throw error("configuration file truncated");
+        } finally {
+            if (Metrics.ON) {
+                Metrics.CONFIG_NANOS.record(System.nanoTime() - start);
+            }
         }
     }
 
@@ -129,14 +945,11 @@ public final class Main {
             }
             if (type.charAt(0) == 'M') {
                 return new MovingRotor(thename,
-                        new Permutation(cycles,
-                                _alphabet), type.substring(1));
+                        permutation(cycles), decode(type.substring(1)));
             } else if (type.charAt(0) == 'N') {
-                return new FixedRotor(thename,
-                        new Permutation(cycles, _alphabet));
+                return new FixedRotor(thename, permutation(cycles));
             } else if (type.charAt(0) == 'R') {
-                return new Reflector(thename,
-                        new Permutation(cycles, _alphabet));
+                return new Reflector(thename, permutation(cycles));
             } else {
                 throw new EnigmaException("wrong rotor");
             }
@@ -144,68 +957,223 @@ public final class Main {
             throw error("bad rotor description");
         }
     }
+
+    /** Return the permutation of _alphabet with the given CYCLES, which
+     *  are decoded first with --bytes. */
+    private Permutation permutation(String cycles) {
+        if (_byteSetting != null) {
+            return new Permutation(splitCycles(cycles), _alphabet);
+        }
+        return new Permutation(cycles, _alphabet);
+    }
+
+    /** Return TOKEN with escapes decoded if --bytes was given, and
+     *  otherwise TOKEN itself. */
+    private String decode(String token) {
+        if (_byteSetting == null || token.indexOf('\\') == -1) {
+            return token;
+        }
+        StringBuilder result = new StringBuilder(token.length());
+        for (int i = 0; i < token.length(); i++) {
+            char ch = token.charAt(i);
+            if (ch != '\\') {
+                result.append(ch);
+            } else if (token.startsWith("\\", i + 1)) {
+                result.append('\\');
+                i += 1;
+            } else if (token.startsWith("x", i + 1)
+                       && i + 4 <= token.length()) {
+                try {
+                    result.append((char) Integer.parseInt(
+                        token.substring(i + 2, i + 4), 16));
+                } catch (NumberFormatException excp) {
+                    throw error("bad escape in %s", token);
+                }
+                i += 3;
+            } else {
+                throw error("bad escape in %s", token);
+            }
+        }
+        return result.toString();
+    }
+
+    /** Return the cycles written in parentheses in CYCLES, each
+     *  decoded, for --bytes.  Decoding happens after splitting, so that
+     *  escaped parentheses and blanks belong to cycles. */
+    private String[] splitCycles(String cycles) {
+        ArrayList<String> result = new ArrayList<>();
+        for (int i = cycles.indexOf('('); i != -1;
+             i = cycles.indexOf('(', i)) {
+            int end = cycles.indexOf(')', i);
+            if (end == -1) {
+                throw error("unclosed cycle in %s", cycles);
+            }
+            result.add(decode(cycles.substring(i + 1, end)));
+            i = end;
+        }
+        return result.toArray(new String[result.size()]);
+    }
+
     /** Set M according to the specification given on SETTINGS,
      *  which must have the format specified in the assignment. */
     private void setUp(Machine M, String settings) {
-        Scanner reader = new Scanner(settings);
-        String[] rotors = new String[M.numRotors()];
-        String starting;
-        String plugboard = "";
-        if (!reader.hasNext("[*]")) {
+        long start = Metrics.ON ? System.nanoTime() : 0;
+        int n = tokenize(settings);
+        if (n < M.numRotors() + 2 || _tokens[1] - _tokens[0] != 1
+            || settings.charAt(_tokens[0]) != '*') {
             throw new EnigmaException("bad input format");
         }
-        reader.next();
-        for (int i = 0; i < M.numRotors(); i++) {
-            rotors[i] = reader.next();
+        if (_rotorNames.length != M.numRotors()) {
+            _rotorNames = new String[M.numRotors()];
         }
-        for (int i = 0; i < rotors.length - 1; i++) {
-            for (int j = i + 1; j < rotors.length; j++) {
-                if (rotors[i].equals(rotors[j])) {
-                    throw new EnigmaException("Repeated Rotor");
-                }
-            }
+        for (int i = 0; i < _rotorNames.length; i++) {
+            _rotorNames[i] = token(settings, i + 1);
         }
-        M.insertRotors(rotors);
+        M.insertRotors(_rotorNames);
         if (!M.getRotors()[0].reflecting()) {
             throw new EnigmaException("First Rotor isnt reflector");
         }
-        starting = reader.next();
+        String starting = decode(token(settings, M.numRotors() + 1));
         M.setRotors(starting);
-        if (starting.length() != rotors.length - 1) {
+        if (CodePoints.length(starting) != _rotorNames.length - 1) {
             throw new EnigmaException("settings not the right length.");
         }
-        String temp1;
-        while (reader.hasNext()) {
-            temp1 = reader.next();
-            if (temp1.charAt(0) != '(') {
-                M.setRings(temp1);
+        _plugs.setLength(0);
+        for (int k = M.numRotors() + 2; k < n; k++) {
+            if (settings.charAt(_tokens[2 * k]) != '(') {
+                M.setRings(decode(token(settings, k)));
             } else {
-                plugboard = plugboard.concat(temp1 + " ");
+                _plugs.append(settings, _tokens[2 * k], _tokens[2 * k + 1])
+                    .append(' ');
             }
         }
-        Permutation plug = new Permutation(plugboard, _alphabet);
-        M.setPlugboard(plug);
+        if (_byteSetting != null) {
+            M.setPlugboard(_plugboards.get(splitCycles(_plugs.toString())));
+        } else {
+            M.setPlugboard(_plugboards.get(_plugs.toString()));
+        }
+        if (Metrics.ON) {
+            Metrics.SETTINGS.add(1);
+            Metrics.SETUP_NANOS.record(System.nanoTime() - start);
+        }
     }
 
-
-    /** Print MSG in groups of five (except that the last group may
-     *  have fewer letters). */
-    private void printMessageLine(String msg) {
-        for (int i = 0; i < msg.length(); i += 5) {
-            int cap = msg.length() - i;
-            if (cap <= 5) {
-                _output.println(msg.substring(i, i + cap));
-            } else {
-                _output.print(msg.substring(i, i + 5) + " ");
+    /** Split LINE into tokens separated by whitespace, as a Scanner
+     *  would, recording the bounds of token k in _tokens[2k] and
+     *  _tokens[2k+1].  Returns the number of tokens. */
+    private int tokenize(String line) {
+        int n = 0;
+        int i = 0;
+        int len = line.length();
+        while (true) {
+            while (i < len && Character.isWhitespace(line.charAt(i))) {
+                i += 1;
+            }
+            if (i == len) {
+                return n;
+            }
+            if (2 * n + 2 > _tokens.length) {
+                _tokens = Arrays.copyOf(_tokens, 2 * _tokens.length);
+            }
+            _tokens[2 * n] = i;
+            while (i < len && !Character.isWhitespace(line.charAt(i))) {
+                i += 1;
             }
+            _tokens[2 * n + 1] = i;
+            n += 1;
         }
     }
 
+    /** Return token K of LINE, as found by the last call of tokenize. */
+    private String token(String line, int k) {
+        return line.substring(_tokens[2 * k], _tokens[2 * k + 1]);
+    }
+
+    /** Write the first LEN characters of MSG to _output as one message
+     *  line, which _output (a GroupWriter) breaks into groups of five. */
+    private void printMessageLine(char[] msg, int len) {
+        _output.write(msg, 0, len);
+        _output.endLine();
+    }
+
+    /** Size of the chunks in which input is read, in characters. */
+    static final int CHUNK = 1 << 16;
+
+    /** Largest part of the input mapped into memory at once, in bytes. */
+    static final long WINDOW = 1 << 26;
+
+    /** Size of the blocks in which --bytes input is converted. */
+    static final int BYTE_BLOCK = 1 << 16;
+
+    /** True iff the input is to be read through a memory mapping. */
+    private boolean _mmap;
+
+    /** The input file, when it is read through a memory mapping. */
+    private FileChannel _mapped;
+
+    /** Size of the output block used for each segment in parallel
+     *  mode, in characters. */
+    static final int SEGMENT_BLOCK = 1 << 10;
+
+    /** Number of threads converting segments in parallel, or 0 if the
+     *  input is converted sequentially. */
+    private int _threads;
+
+    /** Threads converting segments, or null if converting sequentially. */
+    private ExecutorService _pool;
+
+    /** The lines following the latest setting line, not yet handed to
+     *  _pool, or null if there are none. */
+    private StringBuilder _segment;
+
+    /** Results of the segments handed to _pool, in input order. */
+    private ArrayDeque<Future<char[]>> _pending = new ArrayDeque<>();
+
+    /** Reusable space for converting short message lines. */
+    private char[] _scratch = new char[SEGMENT_BLOCK];
+
+    /** Character set of input, output and configuration files. */
+    private static final Charset CHARSET = Charset.defaultCharset();
+
     /** Alphabet used in this machine. */
     private Alphabet _alphabet;
 
+    /** The machine being used to process the input. */
+    private Machine _enigma;
+
+    /** The session converting a segment in parallel mode, or null. */
+    private Session _session;
+
     /** input messages. */
-    private Scanner _input;
+    private Reader _input;
+
+    /** The beginning of the current line, while it may yet turn out to be
+     *  a setting line. */
+    private StringBuilder _line = new StringBuilder();
+
+    /** True iff the current line is a long message being converted as it
+     *  is read. */
+    private boolean _streaming;
+
+    /** True iff the last character read was a carriage return, so that a
+     *  following newline belongs to the same line terminator. */
+    private boolean _afterCR;
+
+    /** True iff a setting line has been seen. */
+    private boolean _hasSetting;
+
+    /** True iff the input contains anything other than whitespace. */
+    private boolean _sawToken;
+
+    /** True iff a blank (but not empty) line has been seen before any
+     *  setting.  That is an error unless the input is entirely blank, in
+     *  which case the error is that the input is empty. */
+    private boolean _orphan;
+
+    /** Number of empty lines seen before anything other than whitespace
+     *  (and before any orphan), which are written once something is, so
+     *  that input that is entirely blank writes nothing. */
+    private int _heldBlanks;
 
     /** another input thing. */
     private Scanner _input2;
@@ -213,9 +1181,72 @@ public final class Main {
     /** Source of machine configuration. */
     private Scanner _config;
 
+    /** The setting line given with --bytes, or null if the input is
+     *  text. */
+    private String _byteSetting;
+
+    /** The crib given with --crib, or null if the input is to be
+     *  converted. */
+    private String _crib;
+
+    /** Number of keys kept by --search, or 0 if not searching. */
+    private int _keep;
+
+    /** Number of keys --search keeps by default. */
+    static final int KEEP = 10;
+
+    /** Number of rightmost rotors whose ring settings --search tries. */
+    private int _ringSlots;
+
+    /** Sample text for n-gram scoring by --search, or null. */
+    private Path _ngrams;
+
+    /** True iff --search is to recover plugboards. */
+    private boolean _steckers;
+
+    /** Checkpoint file for --search, or null. */
+    private Path _checkpoint;
+
+    /** Bounds of the part of the input converted with --range, or -1 in
+     *  _rangeTo if all of it is. */
+    private long _rangeFrom, _rangeTo = -1;
+
+    /** Seconds between dumps of measurements with --metrics=SECONDS, or
+     *  0 if they are dumped only at the end. */
+    private int _metricsInterval;
+
+    /** True iff conversion is to use a Keystream (--keystream). */
+    private boolean _useKeystream;
+
+    /** The keystream for the latest setting with --keystream, or
+     *  null. */
+    private Keystream _keystream;
+
+    /** Source of input with --bytes, unless it is _mapped. */
+    private ReadableByteChannel _inBytes;
+
+    /** Destination of output with --bytes. */
+    private WritableByteChannel _outBytes;
+
     /** File for encoded/decoded messages. */
-    private PrintStream _output;
+    private GroupWriter _output;
 
     /** An ArrayList of ALL usable rotors. */
     private ArrayList<Rotor> _allRotors = new ArrayList<>();
+
+    /** Bounds of the tokens of the last setting line (see tokenize). */
+    private int[] _tokens = new int[32];
+
+    /** Rotor names from the last setting line. */
+    private String[] _rotorNames = new String[0];
+
+    /** Plugboard cycles from the last setting line. */
+    private StringBuilder _plugs = new StringBuilder();
+
+    /** Output buffer for converting text in alphabets that are not
+     *  bmp(). */
+    private char[] _wide = new char[0];
+
+    /** Plugboards of earlier setting lines, for _alphabet. */
+    private PlugboardCache _plugboards;
 }
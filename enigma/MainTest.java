@@ -0,0 +1,70 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/** The suite of all JUnit tests for the Main class.
+ *  @author Manaal Siddiqui
+ */
+public class MainTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** A configuration with the rotors these tests use. */
+    private static final String CONFIG =
+        "ABCDEFGHIJKLMNOPQRSTUVWXYZ\n"
+        + " 5 3\n"
+        + " I MQ      (AELTPHQXRU) (BKNW) (CMOY) (DFG) (IV) (JZ) (S)\n"
+        + " II ME     (FIXVYOMW) (CDKLHUP) (ESZ) (BJ) (GR) (NT) (A) (Q)\n"
+        + " III MV    (ABDHPEJT) (CFLVMZOYQIRWUKXSG) (N)\n"
+        + " Beta N    (ALBEVFCYODJWUGNMQTZSKPR) (HIX)\n"
+        + " B R       (AE) (BN) (CK) (DQ) (FU) (GY) (HW) (IJ) (LO) (MP)\n"
+        + "           (RX) (SZ) (TV)\n";
+
+    /** Return the output of Main run with options OPTIONS on INPUT. */
+    private String run(String input, String... options) throws IOException {
+        Path dir = Files.createTempDirectory("enigma");
+        Path config = dir.resolve("test.conf");
+        Path in = dir.resolve("test.in");
+        Path out = dir.resolve("test.out");
+        try {
+            Files.write(config, CONFIG.getBytes(StandardCharsets.UTF_8));
+            Files.write(in, input.getBytes(StandardCharsets.UTF_8));
+            String[] args = new String[options.length + 3];
+            System.arraycopy(options, 0, args, 0, options.length);
+            args[options.length] = config.toString();
+            args[options.length + 1] = in.toString();
+            args[options.length + 2] = out.toString();
+            Main.main(args);
+            return new String(Files.readAllBytes(out),
+                              StandardCharsets.UTF_8);
+        } finally {
+            Files.deleteIfExists(config);
+            Files.deleteIfExists(in);
+            Files.deleteIfExists(out);
+            Files.delete(dir);
+        }
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void testParallelBlankSegment() throws IOException {
+        String input = "* B Beta I II III AAAA\nWORLD\n"
+            + "* B Beta I II III AAAA\n\n\n";
+        String expected = run(input);
+        assertTrue(expected.endsWith("\n\n\n"));
+        assertEquals(expected, run(input, "--parallel=2"));
+    }
+}
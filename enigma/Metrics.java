@@ -0,0 +1,422 @@
+package enigma;
+
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.AttributeNotFoundException;
+import javax.management.DynamicMBean;
+import javax.management.JMException;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanInfo;
+import javax.management.ObjectName;
+import javax.management.ReflectionException;
+
+import static enigma.EnigmaException.*;
+
+/** Counters and latency histograms measuring where the simulator spends
+ *  its time: letters converted, messages and setting lines processed,
+ *  characters and bytes read and written, cache hits and misses, and
+ *  the time taken to read the configuration, apply a setting line and
+ *  convert a message line.  They can be read through JMX (see
+ *  register) and written out as text (see dump and every).
+ *
+ *  Measuring is on only if the system property enigma.metrics is
+ *  "true" when this class is initialized, which Main's --metrics option
+ *  arranges.  Every measurement is guarded by a test of ON, which is a
+ *  constant, so that when measuring is off the compiler drops the
+ *  measurements entirely.  Counters and histograms may be updated by any
+ *  number of threads at once.
+ *  @author Manaal Siddiqui
+ */
+final class Metrics {
+
+    /** Not instantiable. */
+    private Metrics() {
+    }
+
+    /** True iff measuring is on.  This is fixed when the class is
+     *  initialized, which happens on the first reference to anything in
+     *  it, so the property must be set before then: setting it later has
+     *  no effect.  Main sets it while reading its options, before it
+     *  touches Metrics, and then checks that it took. */
+    static final boolean ON = Boolean.getBoolean("enigma.metrics");
+
+    /** A count of events, striped so that threads updating it at once
+     *  seldom contend. */
+    static final class Counter {
+
+        /** A counter named NAME. */
+        private Counter(String name) {
+            _name = name;
+        }
+
+        /** Return my name. */
+        String name() {
+            return _name;
+        }
+
+        /** Add N to me. */
+        void add(long n) {
+            _sum.add(n);
+        }
+
+        /** Return my total. */
+        long sum() {
+            return _sum.sum();
+        }
+
+        /** My name. */
+        private final String _name;
+        /** My total. */
+        private final LongAdder _sum = new LongAdder();
+    }
+
+    /** A histogram of non-negative values, such as latencies in
+     *  nanoseconds, with log-linear buckets as in an HDR histogram:
+     *  each power of two is split into SUB_BUCKETS equal buckets, so
+     *  every value is recorded to within 1 / SUB_BUCKETS of itself, in
+     *  fixed space and without locking. */
+    static final class Histogram {
+
+        /** Number of buckets into which each power of two is split. */
+        static final int SUB_BUCKETS = 16;
+
+        /** log2 of SUB_BUCKETS. */
+        private static final int SUB_BITS = 4;
+
+        /** A histogram named NAME. */
+        private Histogram(String name) {
+            _name = name;
+        }
+
+        /** Return my name. */
+        String name() {
+            return _name;
+        }
+
+        /** Record VALUE, taking negative values as 0. */
+        void record(long value) {
+            value = Math.max(value, 0);
+            _counts.incrementAndGet(bucket(value));
+            _total.add(value);
+            _max.accumulate(value);
+        }
+
+        /** Return the number of values recorded. */
+        long count() {
+            long n = 0;
+            for (int b = 0; b < _counts.length(); b++) {
+                n += _counts.get(b);
+            }
+            return n;
+        }
+
+        /** Return the mean of the values recorded, or 0 if there are
+         *  none. */
+        double mean() {
+            long n = count();
+            return n == 0 ? 0 : (double) _total.sum() / n;
+        }
+
+        /** Return the largest value recorded, or 0 if there are none. */
+        long max() {
+            return _max.get();
+        }
+
+        /** Return the least bucket bound below which a fraction Q of the
+         *  values recorded lie, which is within 1 / SUB_BUCKETS of the
+         *  exact quantile, or 0 if there are none. */
+        long quantile(double q) {
+            long n = count();
+            long seen = 0;
+            for (int b = 0; b < _counts.length(); b++) {
+                seen += _counts.get(b);
+                if (seen > 0 && seen >= q * n) {
+                    return Math.min(lowest(b + 1) - 1, max());
+                }
+            }
+            return 0;
+        }
+
+        /** Return the bucket holding VALUE.  Values below SUB_BUCKETS
+         *  have one bucket each; above that, each power of two has
+         *  SUB_BUCKETS buckets. */
+        static int bucket(long value) {
+            if (value < SUB_BUCKETS) {
+                return (int) value;
+            }
+            int high = 63 - Long.numberOfLeadingZeros(value);
+            int sub = (int) (value >>> (high - SUB_BITS)) - SUB_BUCKETS;
+            return (high - SUB_BITS + 1) * SUB_BUCKETS + sub;
+        }
+
+        /** Return the least value in bucket B. */
+        static long lowest(int b) {
+            if (b < SUB_BUCKETS) {
+                return b;
+            }
+            int high = b / SUB_BUCKETS + SUB_BITS - 1;
+            long sub = b % SUB_BUCKETS + SUB_BUCKETS;
+            return high >= 63 ? Long.MAX_VALUE : sub << (high - SUB_BITS);
+        }
+
+        /** My name. */
+        private final String _name;
+        /** Number of values recorded in each bucket. */
+        private final AtomicLongArray _counts =
+            new AtomicLongArray(bucket(Long.MAX_VALUE) + 1);
+        /** Sum of the values recorded. */
+        private final LongAdder _total = new LongAdder();
+        /** Largest value recorded. */
+        private final LongAccumulator _max =
+            new LongAccumulator(Math::max, 0);
+    }
+
+    /** All counters, in the order they are reported. */
+    private static final ArrayList<Counter> COUNTERS = new ArrayList<>();
+
+    /** All histograms, in the order they are reported. */
+    private static final ArrayList<Histogram> HISTOGRAMS = new ArrayList<>();
+
+    /** Return a new counter named NAME, reported with the others. */
+    private static Counter counter(String name) {
+        Counter c = new Counter(name);
+        COUNTERS.add(c);
+        return c;
+    }
+
+    /** Return a new histogram named NAME, reported with the others. */
+    private static Histogram histogram(String name) {
+        Histogram h = new Histogram(name);
+        HISTOGRAMS.add(h);
+        return h;
+    }
+
+    /** Letters and bytes converted. */
+    static final Counter CHARS = counter("chars");
+    /** Message lines written. */
+    static final Counter MESSAGES = counter("messages");
+    /** Setting lines applied. */
+    static final Counter SETTINGS = counter("settings");
+    /** Characters of text input read. */
+    static final Counter CHARS_IN = counter("chars.in");
+    /** Characters of text output written. */
+    static final Counter CHARS_OUT = counter("chars.out");
+    /** Bytes of input read with --bytes. */
+    static final Counter BYTES_IN = counter("bytes.in");
+    /** Bytes of output written, with --bytes or by a ChannelWriter. */
+    static final Counter BYTES_OUT = counter("bytes.out");
+    /** Cores found in a CorePool. */
+    static final Counter CORE_HITS = counter("cores.hits");
+    /** Cores built by a CorePool. */
+    static final Counter CORE_MISSES = counter("cores.misses");
+    /** Plugboards found in a PlugboardCache. */
+    static final Counter PLUGBOARD_HITS = counter("plugboards.hits");
+    /** Plugboards built by a PlugboardCache. */
+    static final Counter PLUGBOARD_MISSES = counter("plugboards.misses");
+
+    /** Nanoseconds taken to read the configuration. */
+    static final Histogram CONFIG_NANOS = histogram("config.nanos");
+    /** Nanoseconds taken to apply a setting line. */
+    static final Histogram SETUP_NANOS = histogram("setup.nanos");
+    /** Nanoseconds taken to convert and write a message line. */
+    static final Histogram LINE_NANOS = histogram("line.nanos");
+
+    /** Time at which measuring began, as for System.nanoTime. */
+    private static final long START = System.nanoTime();
+
+    /** The counter totals at the last call to dump, in the order of
+     *  COUNTERS. */
+    private static long[] _lastSums = new long[COUNTERS.size()];
+
+    /** The time of the last call to dump, as for System.nanoTime. */
+    private static long _lastDump = START;
+
+    /** Write all my measurements to OUT: each counter's total and its
+     *  rate per second since the last dump, the hit rates of the caches,
+     *  and the count, mean, median, 99th percentile and maximum of each
+     *  histogram. */
+    static synchronized void dump(PrintStream out) {
+        long now = System.nanoTime();
+        double seconds = Math.max(now - _lastDump, 1) / 1e9;
+        StringBuilder text = new StringBuilder();
+        text.append(String.format("enigma metrics at %.3fs%n",
+                                  (now - START) / 1e9));
+        for (int i = 0; i < COUNTERS.size(); i++) {
+            Counter c = COUNTERS.get(i);
+            long sum = c.sum();
+            text.append(String.format("  %-18s %14d %14.0f/s%n", c.name(),
+                                      sum, (sum - _lastSums[i]) / seconds));
+            _lastSums[i] = sum;
+        }
+        text.append(String.format("  %-18s %13.1f%%%n", "cores.hitRate",
+                                  100 * hitRate(CORE_HITS, CORE_MISSES)));
+        text.append(String.format("  %-18s %13.1f%%%n", "plugboards.hitRate",
+                                  100 * hitRate(PLUGBOARD_HITS,
+                                                PLUGBOARD_MISSES)));
+        for (Histogram h : HISTOGRAMS) {
+            text.append(String.format("  %-18s count %d mean %.0f p50 %d "
+                                      + "p99 %d max %d%n", h.name(),
+                                      h.count(), h.mean(), h.quantile(0.5),
+                                      h.quantile(0.99), h.max()));
+        }
+        _lastDump = now;
+        out.print(text);
+        out.flush();
+    }
+
+    /** Return the fraction of lookups counted by HITS and MISSES that
+     *  were hits, or 0 if there were none. */
+    private static double hitRate(Counter hits, Counter misses) {
+        long h = hits.sum();
+        long total = h + misses.sum();
+        return total == 0 ? 0 : (double) h / total;
+    }
+
+    /** Start dumping my measurements to OUT every SECONDS seconds, on a
+     *  daemon thread. */
+    static void every(long seconds, PrintStream out) {
+        ScheduledExecutorService timer =
+            Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread t = new Thread(r, "enigma-metrics");
+                t.setDaemon(true);
+                return t;
+            });
+        timer.scheduleAtFixedRate(() -> dump(out), seconds, seconds,
+                                  TimeUnit.SECONDS);
+    }
+
+    /** Name under which register makes my measurements available. */
+    static final String OBJECT_NAME = "enigma:type=Metrics";
+
+    /** Make my measurements available through JMX as the attributes of
+     *  the MBean OBJECT_NAME on the platform MBean server: each counter's
+     *  total, each cache's hit rate, and for each histogram its count,
+     *  mean, median, 99th percentile and maximum, as "NAME.count" and so
+     *  on.  Does nothing if it is already registered. */
+    static synchronized void register() {
+        try {
+            ObjectName name = new ObjectName(OBJECT_NAME);
+            if (!ManagementFactory.getPlatformMBeanServer()
+                .isRegistered(name)) {
+                ManagementFactory.getPlatformMBeanServer()
+                    .registerMBean(new Bean(), name);
+            }
+        } catch (JMException excp) {
+            throw error("could not register metrics: %s",
+                        excp.getMessage());
+        }
+    }
+
+    /** The MBean registered by register.  Its attributes are read-only
+     *  and computed when read. */
+    private static final class Bean implements DynamicMBean {
+
+        /** Suffixes of the attributes describing each histogram. */
+        private static final String[] STATS = {
+            "count", "mean", "p50", "p99", "max"
+        };
+
+        @Override
+        public Object getAttribute(String attribute)
+            throws AttributeNotFoundException {
+            for (Counter c : COUNTERS) {
+                if (c.name().equals(attribute)) {
+                    return c.sum();
+                }
+            }
+            if (attribute.equals("cores.hitRate")) {
+                return hitRate(CORE_HITS, CORE_MISSES);
+            } else if (attribute.equals("plugboards.hitRate")) {
+                return hitRate(PLUGBOARD_HITS, PLUGBOARD_MISSES);
+            }
+            for (Histogram h : HISTOGRAMS) {
+                if (attribute.startsWith(h.name() + ".")) {
+                    switch (attribute.substring(h.name().length() + 1)) {
+                    case "count":
+                        return h.count();
+                    case "mean":
+                        return h.mean();
+                    case "p50":
+                        return h.quantile(0.5);
+                    case "p99":
+                        return h.quantile(0.99);
+                    case "max":
+                        return h.max();
+                    default:
+                        break;
+                    }
+                }
+            }
+            throw new AttributeNotFoundException(attribute);
+        }
+
+        @Override
+        public AttributeList getAttributes(String[] attributes) {
+            AttributeList result = new AttributeList();
+            for (String a : attributes) {
+                try {
+                    result.add(new Attribute(a, getAttribute(a)));
+                } catch (AttributeNotFoundException excp) {
+                    /* Omitted from the result, as DynamicMBean allows. */
+                }
+            }
+            return result;
+        }
+
+        @Override
+        public void setAttribute(Attribute attribute)
+            throws AttributeNotFoundException {
+            throw new AttributeNotFoundException("metrics are read-only");
+        }
+
+        @Override
+        public AttributeList setAttributes(AttributeList attributes) {
+            return new AttributeList();
+        }
+
+        @Override
+        public Object invoke(String action, Object[] params,
+                             String[] signature) throws ReflectionException {
+            throw new ReflectionException(new NoSuchMethodException(action));
+        }
+
+        @Override
+        public MBeanInfo getMBeanInfo() {
+            ArrayList<MBeanAttributeInfo> attrs = new ArrayList<>();
+            for (Counter c : COUNTERS) {
+                attrs.add(attribute(c.name(), "long", "total"));
+            }
+            attrs.add(attribute("cores.hitRate", "double", "hit rate"));
+            attrs.add(attribute("plugboards.hitRate", "double",
+                                "hit rate"));
+            for (Histogram h : HISTOGRAMS) {
+                for (String s : STATS) {
+                    attrs.add(attribute(h.name() + "." + s,
+                                        s.equals("mean") ? "double"
+                                        : "long", s));
+                }
+            }
+            return new MBeanInfo(Metrics.class.getName(),
+                                 "Enigma simulator metrics",
+                                 attrs.toArray(new MBeanAttributeInfo[0]),
+                                 null, null, null);
+        }
+
+        /** Return a description of the read-only attribute NAME, of
+         *  TYPE, described by DESCRIPTION. */
+        private static MBeanAttributeInfo attribute(String name, String type,
+                                                    String description) {
+            return new MBeanAttributeInfo(name, type, description, true,
+                                          false, false);
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.util.Random;
+import javax.management.ObjectName;
+import javax.management.ReflectionException;
+
+/** The suite of all JUnit tests for the Metrics class.
+ *  @author Manaal Siddiqui
+ */
+public class MetricsTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void testBuckets() {
+        Random rand = new Random(25);
+        for (int k = 0; k < 10000; k++) {
+            long v = rand.nextLong() >>> (1 + rand.nextInt(63));
+            int b = Metrics.Histogram.bucket(v);
+            long low = Metrics.Histogram.lowest(b);
+            long high = Metrics.Histogram.lowest(b + 1);
+            assertTrue("value " + v, low <= v && v < high);
+            assertTrue("value " + v,
+                       high - low <= Math.max(1, v / Metrics.Histogram
+                                              .SUB_BUCKETS)
+                       || high == Long.MAX_VALUE);
+        }
+        for (long v = 0; v < 1000; v++) {
+            int b = Metrics.Histogram.bucket(v);
+            assertTrue(Metrics.Histogram.lowest(b) <= v);
+            assertTrue(v < Metrics.Histogram.lowest(b + 1));
+        }
+        assertEquals(Long.MAX_VALUE, Metrics.Histogram.lowest(
+            Metrics.Histogram.bucket(Long.MAX_VALUE) + 1));
+    }
+
+    @Test
+    public void testDump() {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        Metrics.dump(new PrintStream(bytes, true));
+        String text = bytes.toString();
+        assertTrue(text.startsWith("enigma metrics at "));
+        for (String name : new String[] {"chars", "cores.hitRate",
+                                         "setup.nanos"}) {
+            assertTrue(name, text.contains("  " + name + " "));
+        }
+    }
+
+    @Test
+    public void testRegister() throws Exception {
+        Metrics.register();
+        Metrics.register();
+        ObjectName name = new ObjectName(Metrics.OBJECT_NAME);
+        Object chars = ManagementFactory.getPlatformMBeanServer()
+            .getAttribute(name, "chars");
+        assertEquals(Metrics.CHARS.sum(), ((Long) chars).longValue());
+        Object count = ManagementFactory.getPlatformMBeanServer()
+            .getAttribute(name, "setup.nanos.count");
+        assertEquals(Metrics.SETUP_NANOS.count(), ((Long) count).longValue());
+    }
+
+    @Test(expected = ReflectionException.class)
+    public void testNoOperations() throws Exception {
+        Metrics.register();
+        ManagementFactory.getPlatformMBeanServer().invoke(
+            new ObjectName(Metrics.OBJECT_NAME), "reset", null, null);
+    }
+
+    @Test
+    public void testMetricsOptionTooLate() {
+        assertFalse(Metrics.ON);
+        try {
+            new Main(new String[] {"--metrics", "missing.conf"});
+            fail("expected --metrics to be rejected");
+        } catch (EnigmaException excp) {
+            assertTrue(excp.getMessage().contains("--metrics"));
+        } finally {
+            System.clearProperty("enigma.metrics");
+        }
+    }
+}
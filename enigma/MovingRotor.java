@@ -13,10 +13,11 @@ class MovingRotor extends Rotor {
      *  The Rotor is initally in its 0 setting (first character of its
      *  alphabet).
      */
-    /** the current notches. */
-    private String _notches;
-    /** the original notches. */
-    private String _originalNotches;
+    /** _notchAt[p] is true iff I am at a notch at setting p, as
+     *  currently shifted. */
+    private boolean[] _notchAt;
+    /** The notch table for my notches as originally given. */
+    private final boolean[] _originalNotchAt;
 
     /** Construct me a moving motor given.
      * @param name The name of the MovingRotor
@@ -25,34 +26,69 @@ class MovingRotor extends Rotor {
      */
     MovingRotor(String name, Permutation perm, String notches) {
         super(name, perm);
-        _notches = notches;
-        _originalNotches = notches;
+        _originalNotchAt = new boolean[perm.size()];
+        Alphabet alpha = perm.alphabet();
+        notches.codePoints().filter(alpha::containsCodePoint).forEach(cp ->
+            _originalNotchAt[alpha.codePointToInt(cp)] = true);
+        _notchAt = _originalNotchAt;
+    }
+
+    /** A rotor named NAME with permutation PERM whose original notch
+     *  table is NOTCHAT, which it shares. */
+    private MovingRotor(String name, Permutation perm, boolean[] notchAt) {
+        super(name, perm);
+        _originalNotchAt = notchAt;
+        _notchAt = notchAt;
     }
 
     /** reset notches. */
     public void resetNotches() {
-        _notches = _originalNotches;
+        _notchAt = _originalNotchAt;
     }
 
     @Override
     boolean atNotch() {
-        int r = permutation().wrap(setting());
-        char reference = permutation().alphabet().toChar(r);
-        return (_notches.indexOf(reference) > -1);
+        return _notchAt[setting()];
+    }
+
+    @Override
+    int[] notches() {
+        int n = 0;
+        for (boolean notch : _notchAt) {
+            if (notch) {
+                n += 1;
+            }
+        }
+        int[] result = new int[n];
+        n = 0;
+        for (int p = 0; p < _notchAt.length; p++) {
+            if (_notchAt[p]) {
+                result[n] = p;
+                n += 1;
+            }
+        }
+        return result;
     }
 
     /** shift notches by a given char.
      * @param ringStr */
     public void shiftNotches(char ringStr) {
-        String newNotches = "";
-        for (int i = 0; i < _notches.length(); i++) {
-            int curNotchInt = alphabet().toInt(_notches.charAt(i));
-            int ringInt = alphabet().toInt(ringStr);
-            char notchChar = alphabet().toChar(permutation()
-                    .wrap(curNotchInt - ringInt));
-            newNotches += notchChar;
+        int ring = alphabet().toInt(ringStr);
+        boolean[] shifted = new boolean[_notchAt.length];
+        for (int p = 0; p < _notchAt.length; p++) {
+            if (_notchAt[p]) {
+                shifted[permutation().wrap(p - ring)] = true;
+            }
         }
-        _notches = newNotches;
+        _notchAt = shifted;
+    }
+
+    @Override
+    Rotor copy() {
+        MovingRotor r = new MovingRotor(name(), permutation(),
+                                        _originalNotchAt);
+        r._notchAt = _notchAt;
+        return copyStateTo(r);
     }
 
     @Override
@@ -153,7 +153,4 @@ public class MovingRotorTest {
         assertEquals(0, _III.convertBackward(2));
         assertEquals(_III.convertBackward(6), _III.convertForward(6));
     }
-
-
-
 }
@@ -0,0 +1,147 @@
+package enigma;
+
+import java.util.Arrays;
+
+/** Scores a text by the log likelihood of its n-grams (runs of n
+ *  letters) under frequencies learned from a sample of plaintext.  The
+ *  n used is the largest, up to MAX_N, whose table of all n-grams fits
+ *  in MAX_TABLE entries.
+ *  @author Manaal Siddiqui
+ */
+class Ngrams implements Scorer {
+
+    /** Longest n-grams used. */
+    static final int MAX_N = 3;
+
+    /** Most entries in an n-gram table. */
+    static final int MAX_TABLE = 1 << 22;
+
+    /** Weight given to each n-gram in addition to its count in the
+     *  sample, so that none has probability 0. */
+    static final double SMOOTHING = 0.1;
+
+    /** A scorer for texts in ALPHA trained on the letters of SAMPLE that
+     *  are in ALPHA.  Other characters break the sample into separate
+     *  runs of letters. */
+    Ngrams(Alphabet alpha, String sample) {
+        int size = alpha.size();
+        int n = MAX_N;
+        while (n > 1 && Math.pow(size, n) > MAX_TABLE) {
+            n -= 1;
+        }
+        _size = size;
+        _n = n;
+        _cells = (int) Math.pow(size, n);
+        _prefixes = _cells / size;
+        long[] counts = new long[_cells];
+        long total = 0;
+        int index = 0, run = 0;
+        for (int i = 0; i < sample.length(); ) {
+            int cp = sample.codePointAt(i);
+            i += Character.charCount(cp);
+            if (!alpha.containsCodePoint(cp)) {
+                run = 0;
+                continue;
+            }
+            index = (index % _prefixes) * size + alpha.codePointToInt(cp);
+            run += 1;
+            if (run >= n) {
+                counts[index] += 1;
+                total += 1;
+            }
+        }
+        _logs = new double[_cells];
+        double max = Double.NEGATIVE_INFINITY;
+        for (int k = 0; k < _cells; k++) {
+            _logs[k] = Math.log((counts[k] + SMOOTHING)
+                                / (total + SMOOTHING * _cells));
+            max = Math.max(max, _logs[k]);
+        }
+        _max = max;
+        _hash = Arrays.hashCode(_logs);
+    }
+
+    /** A scorer sharing the tables of OTHER. */
+    private Ngrams(Ngrams other) {
+        _size = other._size;
+        _n = other._n;
+        _cells = other._cells;
+        _prefixes = other._prefixes;
+        _logs = other._logs;
+        _max = other._max;
+        _hash = other._hash;
+    }
+
+    /** Return the n of my n-grams. */
+    int n() {
+        return _n;
+    }
+
+    /** Return the log likelihood of the n-gram whose letters, as a
+     *  number in base size, are INDEX.  */
+    double log(int index) {
+        return _logs[index];
+    }
+
+    @Override
+    public void reset() {
+        _index = 0;
+        _length = 0;
+        _sum = 0;
+    }
+
+    @Override
+    public void add(int c) {
+        _index = (_index % _prefixes) * _size + c;
+        _length += 1;
+        if (_length >= _n) {
+            _sum += _logs[_index];
+        }
+    }
+
+    @Override
+    public double score() {
+        return _sum;
+    }
+
+    @Override
+    public double bound(int remaining) {
+        int more = Math.min(remaining, _length + remaining - _n + 1);
+        return _sum + Math.max(more, 0) * _max;
+    }
+
+    @Override
+    public Scorer copy() {
+        return new Ngrams(this);
+    }
+
+    /** Includes a hash of my table, so that Ngrams trained on different
+     *  samples are told apart. */
+    @Override
+    public String describe() {
+        return String.format("Ngrams%d:%08x", _n, _hash);
+    }
+
+    /** Size of the alphabet. */
+    private final int _size;
+    /** Length of my n-grams. */
+    private final int _n;
+    /** Number of possible n-grams. */
+    private final int _cells;
+    /** Number of possible (n-1)-grams.  An index is taken modulo this
+     *  before a letter is appended, which keeps it below _cells without
+     *  overflowing on the way. */
+    private final int _prefixes;
+    /** _logs[k] is the log likelihood of n-gram k. */
+    private final double[] _logs;
+    /** Largest of _logs. */
+    private final double _max;
+    /** Hash of _logs. */
+    private final int _hash;
+    /** The last n letters added, as a number in base _size. */
+    private int _index;
+    /** Number of letters added. */
+    private int _length;
+    /** Sum of the log likelihoods of the n-grams added. */
+    private double _sum;
+}
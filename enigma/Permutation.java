@@ -1,5 +1,8 @@
 package enigma;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+
 import static enigma.EnigmaException.*;
 
 /** Represents a permutation of a range of integers starting at 0 corresponding
@@ -16,12 +19,19 @@ class Permutation {
 
     /** Alphabet of this permutation. */
     private Alphabet _alphabet;
-    /** my cycles for permutation. */
+    /** my cycles for permutation, in cycle notation, or null if they
+     *  were given as a list. */
     private String _cycles;
-    /** cycles in a list. */
+    /** my cycles as given in a list, or null. */
+    private String[] _given;
+    /** cycles in a list, made when first asked for. */
     private String[] _cyclesList;
     /**whether or not it's deranged like me.*/
     private boolean deranged;
+    /** _forward[k] is the index that index K maps to. */
+    private int[] _forward;
+    /** _inverse[k] is the index that maps to index K. */
+    private int[] _inverse;
 
     /** Construct a permutation.
      * @param cycles of the Permutation
@@ -29,38 +39,120 @@ class Permutation {
     Permutation(String cycles, Alphabet alphabet) {
         _alphabet = alphabet;
         _cycles = cycles;
-        deranged = true;
-        _cyclesList = cycles.replaceAll("[)(]", " ").split(" ");
-
-        for (int i = 0; i < _alphabet.size(); i++) {
-            char alphaChar = _alphabet.getAlpha()[i];
-            boolean found = false;
-            for (String cycle: _cyclesList) {
-                if (cycle.contains(Character.toString(alphaChar))) {
-                    found = true;
+        compile();
+    }
+
+    /** A permutation of ALPHABET in which each element of CYCLES is one
+     *  cycle, all of whose characters are taken literally.  Unlike cycle
+     *  notation, this can describe cycles containing parentheses or
+     *  whitespace. */
+    Permutation(String[] cycles, Alphabet alphabet) {
+        _alphabet = alphabet;
+        _given = cycles.clone();
+        compile();
+    }
+
+    /** Fill in _forward and _inverse from my cycles in one pass over
+     *  them and one over my alphabet, so that permute and invert never
+     *  have to scan the cycles again.  In _cycles, parentheses and
+     *  whitespace separate cycles.  It is an error for a cycle to contain
+     *  a character that is not in my alphabet or that has already
+     *  appeared. */
+    private void compile() {
+        int n = size();
+        _forward = new int[n];
+        _inverse = new int[n];
+        Arrays.fill(_forward, -1);
+        if (_given != null) {
+            for (String cycle : _given) {
+                link(cycle, 0, cycle.length());
+            }
+        } else {
+            int start = 0;
+            for (int i = 0, len; i <= _cycles.length(); i += len) {
+                int ch = i < _cycles.length() ? _cycles.codePointAt(i) : ' ';
+                len = Character.charCount(ch);
+                if (ch == '(' || ch == ')' || Character.isWhitespace(ch)) {
+                    link(_cycles, start, i);
+                    start = i + len;
                 }
             }
-            if (!found) {
-                addCycle(Character.toString(alphaChar));
+        }
+        deranged = true;
+        for (int k = 0; k < n; k++) {
+            if (_forward[k] == -1) {
+                _forward[k] = _inverse[k] = k;
+            }
+            if (_forward[k] == k) {
                 deranged = false;
             }
         }
+        _cyclesList = null;
+    }
+
+    /** Enter the characters of S from START to END as one cycle. */
+    private void link(String s, int start, int end) {
+        int first = -1, prev = -1;
+        for (int i = start; i < end;) {
+            int ch = s.codePointAt(i);
+            i += Character.charCount(ch);
+            if (!_alphabet.containsCodePoint(ch)) {
+                throw error("character %c of a cycle is not in the alphabet",
+                            ch);
+            }
+            int k = _alphabet.codePointToInt(ch);
+            if (_forward[k] != -1 || k == prev) {
+                throw error("character %c appears twice in cycles", ch);
+            }
+            if (prev == -1) {
+                first = k;
+            } else {
+                _forward[prev] = k;
+                _inverse[k] = prev;
+            }
+            prev = k;
+        }
+        if (prev != -1) {
+            _forward[prev] = first;
+            _inverse[first] = prev;
+        }
     }
 
     /** Add the cycle c0->c1->...->cm->c0 to the permutation, where CYCLE is
      *  c0c1...cm. */
     void addCycle(String cycle) {
-        String[] cycleTemp = new String[_cyclesList.length + 1];
-        for (int i = 0; i < this._cyclesList.length; i++) {
-            cycleTemp[i] = this._cyclesList[i];
+        if (_given != null) {
+            _given = Arrays.copyOf(_given, _given.length + 1);
+            _given[_given.length - 1] = cycle;
+        } else {
+            _cycles = _cycles + " (" + cycle + ")";
         }
-        cycleTemp[_cyclesList.length] = cycle;
-        this._cyclesList = cycleTemp;
+        compile();
     }
     /** get all the cycles, testing purposes.
      * @return the list of cycles */
     public String[] getCycles() {
-        return this._cyclesList;
+        if (_cyclesList == null) {
+            ArrayList<String> list = new ArrayList<>();
+            boolean[] listed = new boolean[size()];
+            String[] cycles = _given != null ? _given
+                : _cycles.split("[()\\s]+");
+            for (String cycle : cycles) {
+                if (!cycle.isEmpty()) {
+                    list.add(cycle);
+                    cycle.codePoints().forEach(cp ->
+                        listed[_alphabet.codePointToInt(cp)] = true);
+                }
+            }
+            for (int k = 0; k < size(); k++) {
+                if (!listed[k]) {
+                    list.add(new String(Character.toChars(
+                        _alphabet.toCodePoint(k))));
+                }
+            }
+            _cyclesList = list.toArray(new String[list.size()]);
+        }
+        return _cyclesList;
     }
 
     /** Return the value of P modulo the size of this permutation. */
@@ -80,33 +172,13 @@ class Permutation {
     /** Return the result of applying this permutation to P modulo the
      *  alphabet size. */
     int permute(int p) {
-        char in = _alphabet.toChar(wrap(p));
-        for (String temp : _cyclesList) {
-            if (temp.indexOf(in) != -1) {
-                int index = temp.indexOf(in) + 1;
-                if (index >= temp.length()) {
-                    return _alphabet.toInt(temp.charAt(0));
-                }
-                char place = temp.charAt(index);
-                return _alphabet.toInt(place);
-            }
-        }
-        throw new EnigmaException("not in alpha");
+        return _forward[wrap(p)];
     }
+
     /** Return the result of applying the inverse of this permutation
      *  to  C modulo the alphabet size. */
     int invert(int c) {
-        char in = _alphabet.toChar(wrap(c));
-        for (String temp : _cyclesList) {
-            if (temp.indexOf(in) != -1) {
-                int index = temp.indexOf(in) - 1;
-                if (index == -1) {
-                    return _alphabet.toInt(temp.charAt(temp.length() - 1));
-                }
-                return _alphabet.toInt(temp.charAt(index));
-            }
-        }
-        throw new EnigmaException("not in alpha");
+        return _inverse[wrap(c)];
     }
 
     /** Return the result of applying this permutation to the index of P
@@ -8,8 +8,6 @@ import java.util.Arrays;
 
 import static org.junit.Assert.*;
 
-import static enigma.TestUtils.*;
-
 /**
  * The suite of all JUnit tests for the Permutation class. For the purposes of
  * this lab (in order to test) this is an abstract class, but in proj1, it will
@@ -50,9 +48,19 @@ public class PermutationTest {
     @Rule
     public Timeout globalTimeout = Timeout.seconds(5);
 
+    /** The letters of the standard alphabet. */
+    private static final String UPPER_STRING = "ABCDEFGHIJKLMNOPQRSTUVWXYZ";
+
     private Permutation perms;
     private String alphas = UPPER_STRING;
 
+    /** Return TESTID followed by FORMAT filled in with ARGS, as an
+     *  assertion message. */
+    private static String msg(String testId, String format,
+                              Object... args) {
+        return testId + ": " + String.format(format, args);
+    }
+
 
     /** Check that PERM has an ALPHABET whose size is that of
      *  FROMALPHA and TOALPHA and that maps each character of
@@ -116,6 +124,23 @@ public class PermutationTest {
         Permutation bad7 = new Permutation("(AB!C)", new Alphabet());
     }
 
+    @Test
+    public void testSparseAlphabet() {
+        Alphabet sparse = new Alphabet("A\u4e00z\uffff!");
+        assertEquals(5, sparse.size());
+        assertEquals(1, sparse.toInt('\u4e00'));
+        assertEquals(3, sparse.toInt('\uffff'));
+        assertEquals(4, sparse.toInt('!'));
+        assertTrue(sparse.contains('z'));
+        assertFalse(sparse.contains('B'));
+        assertFalse(sparse.contains('\u4e01'));
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void testSparseAlphabetDuplicates() {
+        new Alphabet("A\u4e00BC\u4e00");
+    }
+
     @Test(expected = EnigmaException.class)
     public void testAlphabetContains() {
         Alphabet myAlpha2 = new Alphabet("QWERTYUIOP");
@@ -250,7 +275,78 @@ public class PermutationTest {
         assertTrue(p1.derangement());
 
         String sic = "(CDX) (EHUIJMT) (FKNPYWS) (GLOVQRZ) (A)";
-        Permutation p2 = new Permutation("sic", a);
+        Permutation p2 = new Permutation(sic, a);
         assertFalse(p2.derangement());
     }
+
+    @Test(expected = EnigmaException.class)
+    public void testCycleNotInAlphabet() {
+        new Permutation("(AB) (CdE)", new Alphabet());
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void testRepeatedInCycles() {
+        new Permutation("(AB) (CDA)", new Alphabet());
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void testRepeatedInOneCycle() {
+        new Permutation("(ABB)", new Alphabet());
+    }
+
+    @Test
+    public void testLargeAlphabet() {
+        int n = 20000;
+        StringBuilder chars = new StringBuilder();
+        StringBuilder cycle = new StringBuilder("(");
+        for (int i = 0; i < n; i++) {
+            chars.append((char) (0x4e00 + i));
+            if (i % 2 == 0) {
+                cycle.append((char) (0x4e00 + i));
+            }
+        }
+        Permutation p = new Permutation(cycle.append(')').toString(),
+                                        new Alphabet(chars.toString()));
+        assertEquals(2, p.permute(0));
+        assertEquals(0, p.permute(n - 2));
+        assertEquals(n - 2, p.invert(0));
+        assertEquals(1, p.permute(1));
+        assertFalse(p.derangement());
+    }
+
+    @Test
+    public void testSupplementaryAlphabet() {
+        Alphabet a = new Alphabet("A\ud835\udc01C\ud835\udc03");
+        assertEquals(4, a.size());
+        assertFalse(a.bmp());
+        assertEquals(1, a.codePointToInt(0x1d401));
+        assertEquals(0x1d403, a.toCodePoint(3));
+        assertEquals('C', a.toChar(2));
+        assertFalse(a.containsCodePoint(0x1d402));
+        Permutation p = new Permutation("(A\ud835\udc03) (\ud835\udc01)",
+                                        a);
+        assertEquals(3, p.permute(0));
+        assertEquals(1, p.permute(1));
+        assertEquals(2, p.invert(2));
+    }
+
+    @Test
+    public void testPerfectHashAlphabet() {
+        StringBuilder chars = new StringBuilder();
+        for (int i = 0; i < 3000; i++) {
+            chars.appendCodePoint(0x10000 + i * 331);
+        }
+        Alphabet a = new Alphabet(chars.toString());
+        assertEquals(3000, a.size());
+        for (int i = 0; i < 3000; i++) {
+            assertEquals(i, a.codePointToInt(0x10000 + i * 331));
+            assertFalse(a.containsCodePoint(0x10001 + i * 331));
+        }
+        assertFalse(a.contains('A'));
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void testPerfectHashDuplicates() {
+        new Alphabet("\ud800\udc00A\udbff\udfff\ud800\udc00");
+    }
 }
@@ -0,0 +1,186 @@
+package enigma;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/** A bounded cache of plugboard permutations over one alphabet, keyed by
+ *  their cycles in a normal form, so that a plugboard that turns up on
+ *  many setting lines is built only once.  When full, the least recently
+ *  used plugboard is dropped.  Not safe for use by several threads at
+ *  once.
+ *  @author Manaal Siddiqui
+ */
+class PlugboardCache {
+
+    /** Default number of plugboards kept. */
+    static final int CAPACITY = 256;
+
+    /** A cache of at most CAPACITY plugboards over ALPHA. */
+    PlugboardCache(Alphabet alpha) {
+        this(alpha, CAPACITY);
+    }
+
+    /** A cache of at most CAPACITY plugboards over ALPHA. */
+    PlugboardCache(Alphabet alpha, int capacity) {
+        _alphabet = alpha;
+        _capacity = capacity;
+        _plugboards = new LinkedHashMap<String, Permutation>(16, 0.75f,
+                                                              true) {
+            @Override
+            protected boolean removeEldestEntry(
+                Map.Entry<String, Permutation> e) {
+                if (size() > _capacity) {
+                    _evictions += 1;
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /** Return the permutation of my alphabet with the given CYCLES, as
+     *  for new Permutation(CYCLES, alphabet). */
+    Permutation get(String cycles) {
+        String key = normalize(cycles);
+        Permutation result = _plugboards.get(key);
+        if (result != null) {
+            _hits += 1;
+            if (Metrics.ON) {
+                Metrics.PLUGBOARD_HITS.add(1);
+            }
+            return result;
+        }
+        _misses += 1;
+        if (Metrics.ON) {
+            Metrics.PLUGBOARD_MISSES.add(1);
+        }
+        result = new Permutation(cycles, _alphabet);
+        _plugboards.put(key, result);
+        return result;
+    }
+
+    /** Return the permutation of my alphabet with the given CYCLES, as
+     *  for new Permutation(CYCLES, alphabet). */
+    Permutation get(String[] cycles) {
+        String key = normalize(cycles);
+        Permutation result = _plugboards.get(key);
+        if (result != null) {
+            _hits += 1;
+            if (Metrics.ON) {
+                Metrics.PLUGBOARD_HITS.add(1);
+            }
+            return result;
+        }
+        _misses += 1;
+        if (Metrics.ON) {
+            Metrics.PLUGBOARD_MISSES.add(1);
+        }
+        result = new Permutation(cycles, _alphabet);
+        _plugboards.put(key, result);
+        return result;
+    }
+
+    /** Return a normal form for the list of CYCLES, which may contain
+     *  any characters, including blanks and parentheses.  Each cycle is
+     *  rotated and sorted as for normalize(String) and preceded by its
+     *  length.  The result starts with a blank, which no normal form of a
+     *  cycle string does. */
+    static String normalize(String[] cycles) {
+        String[] parts = new String[cycles.length];
+        int n = 0;
+        for (String cycle : cycles) {
+            if (!cycle.isEmpty()) {
+                parts[n] = rotateToLeast(cycle);
+                n += 1;
+            }
+        }
+        Arrays.sort(parts, 0, n);
+        StringBuilder key = new StringBuilder(" ");
+        for (int i = 0; i < n; i++) {
+            key.append(parts[i].length()).append(':').append(parts[i]);
+        }
+        return key.toString();
+    }
+
+    /** Return CYCLES in a normal form that is the same for any two
+     *  strings describing the same cycles: each cycle starts with its
+     *  least character, the cycles are in increasing order, and they are
+     *  separated by single blanks.  As in Permutation, parentheses and
+     *  whitespace both separate cycles. */
+    static String normalize(String cycles) {
+        String[] parts = cycles.split("[()\\s]+");
+        int n = 0;
+        for (String part : parts) {
+            if (!part.isEmpty()) {
+                parts[n] = rotateToLeast(part);
+                n += 1;
+            }
+        }
+        Arrays.sort(parts, 0, n);
+        StringBuilder key = new StringBuilder(cycles.length());
+        for (int i = 0; i < n; i++) {
+            if (i > 0) {
+                key.append(' ');
+            }
+            key.append(parts[i]);
+        }
+        return key.toString();
+    }
+
+    /** Return CYCLE rotated to begin at its least character.  A
+     *  supplementary character is never split. */
+    private static String rotateToLeast(String cycle) {
+        int least = 0;
+        for (int i = 0; i < cycle.length();
+             i += Character.charCount(cycle.codePointAt(i))) {
+            if (cycle.codePointAt(i) < cycle.codePointAt(least)) {
+                least = i;
+            }
+        }
+        if (least == 0) {
+            return cycle;
+        }
+        return cycle.substring(least) + cycle.substring(0, least);
+    }
+
+    /** Return the number of plugboards I hold. */
+    int size() {
+        return _plugboards.size();
+    }
+
+    /** Return the number of calls of get answered from the cache. */
+    long hits() {
+        return _hits;
+    }
+
+    /** Return the number of calls of get that built a new permutation. */
+    long misses() {
+        return _misses;
+    }
+
+    /** Return the number of plugboards dropped to stay within
+     *  capacity. */
+    long evictions() {
+        return _evictions;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("plugboards: %d cached, %d hits, %d misses, "
+                             + "%d evictions", size(), _hits, _misses,
+                             _evictions);
+    }
+
+    /** The alphabet of my plugboards. */
+    private final Alphabet _alphabet;
+
+    /** Most plugboards kept. */
+    private final int _capacity;
+
+    /** Plugboards by normalized cycles, least recently used first. */
+    private final LinkedHashMap<String, Permutation> _plugboards;
+
+    /** Counts of hits, misses and evictions. */
+    private long _hits, _misses, _evictions;
+}
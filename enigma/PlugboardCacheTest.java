@@ -0,0 +1,59 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+/** The suite of all JUnit tests for the PlugboardCache class.
+ *  @author Manaal Siddiqui
+ */
+public class PlugboardCacheTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** The standard upper-case alphabet. */
+    private Alphabet alpha = new Alphabet();
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void testNormalize() {
+        assertEquals("AR BZ DP QT",
+                     PlugboardCache.normalize("(BZ) (AR) (PD) (TQ)"));
+        assertEquals("AR BZ DP QT",
+                     PlugboardCache.normalize(" (ZB)(RA)  (DP) (QT) "));
+        assertEquals("ACB", PlugboardCache.normalize("(CBA)"));
+        assertEquals("", PlugboardCache.normalize(""));
+    }
+
+    @Test
+    public void testHitsAndMisses() {
+        PlugboardCache cache = new PlugboardCache(alpha);
+        Permutation p = cache.get("(BZ) (AR)");
+        assertSame(p, cache.get("(AR)(ZB)"));
+        assertNotSame(p, cache.get("(AR)"));
+        assertEquals(1, cache.hits());
+        assertEquals(2, cache.misses());
+        assertEquals('Z', p.permute('B'));
+        assertEquals('C', p.permute('C'));
+    }
+
+    @Test
+    public void testEviction() {
+        PlugboardCache cache = new PlugboardCache(alpha, 2);
+        Permutation ab = cache.get("(AB)");
+        cache.get("(CD)");
+        cache.get("(AB)");
+        cache.get("(EF)");
+        assertEquals(2, cache.size());
+        assertEquals(1, cache.evictions());
+        assertSame(ab, cache.get("(AB)"));
+        cache.get("(CD)");
+        assertEquals(4, cache.misses());
+    }
+}
@@ -0,0 +1,351 @@
+package enigma;
+
+import java.util.Arrays;
+
+/** Recovers the plugboard of a machine whose rotors are known, from a
+ *  ciphertext alone, by hill climbing: starting from some plugboard, it
+ *  tries changing the plugs of each pair of letters in turn, and keeps
+ *  every change that makes the decrypt score better by an Ngrams
+ *  scorer, until none does.
+ *
+ *  Without its plugboard P, the machine at step t is a fixed
+ *  permutation S_t, made of the rightmost rotor at a known shift around
+ *  a core table (see CoreCache) that is computed once per position.
+ *  Letter t of the decrypt is P(S_t(P(c_t))), where c_t is letter t of
+ *  the ciphertext.  A change of plugs that alters P only on a set X of
+ *  letters can only alter the decrypt at positions where c_t is in X or
+ *  S_t(P(c_t)) is in X, and I keep lists of the positions of each
+ *  letter in both places, so a change is scored by rescoring just the
+ *  n-grams that overlap those positions.
+ *  @author Manaal Siddiqui
+ */
+class PlugboardSolver {
+
+    /** Smallest improvement in score that counts. */
+    static final double EPSILON = 1e-9;
+
+    /** A solver for CIPHER (as alphabet indices), enciphered by a
+     *  machine whose rotors are as in SESSION, scoring decrypts with
+     *  NGRAMS.  SESSION's plugboard is ignored, and SESSION itself is not
+     *  changed. */
+    PlugboardSolver(Session session, int[] cipher, Ngrams ngrams) {
+        MachineSpec spec = session.spec();
+        int n = spec.numRotors();
+        _alphabet = spec.alphabet();
+        _size = _alphabet.size();
+        _ngrams = ngrams;
+        _cipher = cipher;
+        int len = cipher.length;
+        _forward = spec.forwardWiring();
+        _inverse = spec.inverseWiring();
+        _fast = session.rotor(n - 1) * 2 * _size;
+        _shift = new int[len];
+        _core = new int[len][];
+        Session s = session.copy();
+        CoreCache cores = new CoreCache(spec, CORES);
+        int[] slots = new int[n];
+        int[] shifts = new int[n];
+        for (int i = 0; i < n; i++) {
+            slots[i] = s.rotor(i);
+        }
+        for (int t = 0; t < len; t++) {
+            s.moveRotors();
+            for (int i = 0; i < n; i++) {
+                int k = s.setting(i) - s.ring(i);
+                shifts[i] = k + (_size & (k >> 31));
+            }
+            _shift[t] = shifts[n - 1];
+            _core[t] = cores.get(slots, shifts);
+        }
+        int[] start = new int[_size + 1];
+        for (int c : cipher) {
+            start[c + 1] += 1;
+        }
+        for (int c = 0; c < _size; c++) {
+            start[c + 1] += start[c];
+        }
+        _byCipherStart = start;
+        _byCipher = new int[len];
+        int[] fill = start.clone();
+        for (int t = 0; t < len; t++) {
+            _byCipher[fill[cipher[t]]++] = t;
+        }
+        _plugs = new int[_size];
+        _middle = new int[len];
+        _plain = new int[len];
+        _midHead = new int[_size];
+        _midNext = new int[len];
+        _midPrev = new int[len];
+        _trial = new int[_size];
+        _trialStamp = new int[_size];
+        _newPlain = new int[len];
+        _posnStamp = new int[len];
+        _touched = new int[len];
+        _windowStamp = new int[len];
+    }
+
+    /** Return the plugboard reached by hill climbing from START, which
+     *  must be a permutation of my alphabet that is its own inverse. */
+    Permutation solve(Permutation start) {
+        for (int c = 0; c < _size; c++) {
+            _plugs[c] = start.permute(c);
+        }
+        decryptAll();
+        boolean improved = true;
+        while (improved) {
+            improved = false;
+            for (int a = 0; a < _size; a++) {
+                for (int b = a + 1; b < _size; b++) {
+                    if (propose(a, b) > EPSILON) {
+                        accept();
+                        improved = true;
+                    }
+                }
+            }
+        }
+        return new Permutation(cycles(), _alphabet);
+    }
+
+    /** Return the score of the decrypt under the last plugboard
+     *  returned by solve. */
+    double score() {
+        return _score;
+    }
+
+    /** Return the cycles of my current plugboard, as for Permutation,
+     *  each pair once. */
+    String cycles() {
+        StringBuilder result = new StringBuilder();
+        for (int a = 0; a < _size; a++) {
+            if (_plugs[a] > a) {
+                if (result.length() > 0) {
+                    result.append(' ');
+                }
+                result.append('(')
+                    .appendCodePoint(_alphabet.toCodePoint(a))
+                    .appendCodePoint(_alphabet.toCodePoint(_plugs[a]))
+                    .append(')');
+            }
+        }
+        return result.toString();
+    }
+
+    /** Return the image of C under the machine without its plugboard at
+     *  step T. */
+    private int scramble(int t, int c) {
+        int s = _shift[t];
+        int r = _forward[_fast + c + s] - s;
+        r = _core[t][r + (_size & (r >> 31))] + s;
+        r = _inverse[_fast + r] - s;
+        return r + (_size & (r >> 31));
+    }
+
+    /** Decrypt the whole ciphertext with _plugs, and set up the lists of
+     *  positions by middle letter and the score from scratch. */
+    private void decryptAll() {
+        Arrays.fill(_midHead, -1);
+        for (int t = 0; t < _cipher.length; t++) {
+            _middle[t] = scramble(t, _plugs[_cipher[t]]);
+            _plain[t] = _plugs[_middle[t]];
+            link(t);
+        }
+        _score = 0;
+        for (int w = 0; w + _ngrams.n() <= _cipher.length; w++) {
+            _score += _ngrams.log(window(w, false));
+        }
+    }
+
+    /** Add position T to the list of its middle letter. */
+    private void link(int t) {
+        int z = _middle[t];
+        _midPrev[t] = -1;
+        _midNext[t] = _midHead[z];
+        if (_midHead[z] != -1) {
+            _midPrev[_midHead[z]] = t;
+        }
+        _midHead[z] = t;
+    }
+
+    /** Remove position T from the list of its middle letter. */
+    private void unlink(int t) {
+        if (_midPrev[t] == -1) {
+            _midHead[_middle[t]] = _midNext[t];
+        } else {
+            _midNext[_midPrev[t]] = _midNext[t];
+        }
+        if (_midNext[t] != -1) {
+            _midPrev[_midNext[t]] = _midPrev[t];
+        }
+    }
+
+    /** Set up, as the trial plugboard, the result of changing the plugs
+     *  of A and B: unplug them if they are plugged together, and
+     *  otherwise unplug both from their partners and plug them together.
+     *  Returns the change in score the trial would make. */
+    private double propose(int a, int b) {
+        _trialGen += 1;
+        _changed = 0;
+        int pa = _plugs[a], pb = _plugs[b];
+        if (pa == b) {
+            plug(a, a);
+            plug(b, b);
+        } else {
+            plug(pa, pa);
+            plug(pb, pb);
+            plug(a, b);
+            plug(b, a);
+        }
+        _posnGen += 1;
+        _nTouched = 0;
+        for (int k = 0; k < _changed; k++) {
+            int x = _changedLetters[k];
+            for (int e = _byCipherStart[x]; e < _byCipherStart[x + 1];
+                 e++) {
+                touch(_byCipher[e]);
+            }
+            for (int t = _midHead[x]; t != -1; t = _midNext[t]) {
+                touch(t);
+            }
+        }
+        _windowGen += 1;
+        double delta = 0;
+        int n = _ngrams.n();
+        int last = _cipher.length - n;
+        for (int k = 0; k < _nTouched; k++) {
+            int t = _touched[k];
+            for (int w = Math.max(0, t - n + 1); w <= Math.min(t, last);
+                 w++) {
+                if (_windowStamp[w] != _windowGen) {
+                    _windowStamp[w] = _windowGen;
+                    delta += _ngrams.log(window(w, true))
+                        - _ngrams.log(window(w, false));
+                }
+            }
+        }
+        _delta = delta;
+        return delta;
+    }
+
+    /** Make the trial plugboard take A to B. */
+    private void plug(int a, int b) {
+        if (_trialStamp[a] != _trialGen) {
+            _trialStamp[a] = _trialGen;
+            _changedLetters[_changed++] = a;
+        }
+        _trial[a] = b;
+    }
+
+    /** Return the image of C under the trial plugboard. */
+    private int trial(int c) {
+        return _trialStamp[c] == _trialGen ? _trial[c] : _plugs[c];
+    }
+
+    /** Record the decrypt of position T under the trial plugboard, if
+     *  not already done. */
+    private void touch(int t) {
+        if (_posnStamp[t] != _posnGen) {
+            _posnStamp[t] = _posnGen;
+            _touched[_nTouched++] = t;
+            int c = _cipher[t];
+            int middle = _trialStamp[c] == _trialGen
+                ? scramble(t, trial(c)) : _middle[t];
+            _newPlain[t] = trial(middle);
+        }
+    }
+
+    /** Return the n-gram starting at decrypt position W, as a number in
+     *  base size, taken from the trial decrypt if TRIAL. */
+    private int window(int w, boolean trial) {
+        int index = 0;
+        for (int k = w; k < w + _ngrams.n(); k++) {
+            int p = trial && _posnStamp[k] == _posnGen ? _newPlain[k]
+                : _plain[k];
+            index = index * _size + p;
+        }
+        return index;
+    }
+
+    /** Make the last trial plugboard the current one. */
+    private void accept() {
+        for (int k = 0; k < _changed; k++) {
+            int x = _changedLetters[k];
+            _plugs[x] = _trial[x];
+        }
+        for (int k = 0; k < _nTouched; k++) {
+            int t = _touched[k];
+            int middle = scramble(t, _plugs[_cipher[t]]);
+            if (middle != _middle[t]) {
+                unlink(t);
+                _middle[t] = middle;
+                link(t);
+            }
+            _plain[t] = _newPlain[t];
+        }
+        _score += _delta;
+        _trialGen += 1;
+        _posnGen += 1;
+    }
+
+    /** Number of cores kept while setting up. */
+    static final int CORES = 64;
+
+    /** My alphabet. */
+    private final Alphabet _alphabet;
+    /** Size of the alphabet. */
+    private final int _size;
+    /** The scorer of decrypts. */
+    private final Ngrams _ngrams;
+    /** The ciphertext. */
+    private final int[] _cipher;
+    /** Rotor wirings, as for MachineSpec.forwardWiring. */
+    private final int[] _forward;
+    /** Inverse rotor wirings, as for MachineSpec.inverseWiring. */
+    private final int[] _inverse;
+    /** Offset of the rightmost rotor in _forward and _inverse. */
+    private final int _fast;
+    /** _shift[t] is the shift of the rightmost rotor at step t. */
+    private final int[] _shift;
+    /** _core[t] is the core table at step t. */
+    private final int[][] _core;
+    /** The positions at which the ciphertext has letter c are
+     *  _byCipher[_byCipherStart[c] .. _byCipherStart[c + 1] - 1]. */
+    private final int[] _byCipherStart, _byCipher;
+
+    /** The current plugboard. */
+    private final int[] _plugs;
+    /** _middle[t] is S_t(P(c_t)) under the current plugboard P. */
+    private final int[] _middle;
+    /** The current decrypt. */
+    private final int[] _plain;
+    /** Score of the current decrypt. */
+    private double _score;
+    /** The positions t with _middle[t] == z form a doubly-linked list
+     *  starting at _midHead[z] (or -1), linked by _midNext and
+     *  _midPrev. */
+    private final int[] _midHead, _midNext, _midPrev;
+
+    /** _trial[x] is the trial plugboard's image of x, if _trialStamp[x]
+     *  is _trialGen; otherwise it is _plugs[x]. */
+    private final int[] _trial, _trialStamp;
+    /** Current stamp for _trial. */
+    private int _trialGen;
+    /** The letters on which the trial plugboard differs. */
+    private final int[] _changedLetters = new int[4];
+    /** Number of _changedLetters. */
+    private int _changed;
+    /** _newPlain[t] is the trial decrypt at t, if _posnStamp[t] is
+     *  _posnGen. */
+    private final int[] _newPlain, _posnStamp;
+    /** Current stamp for _newPlain. */
+    private int _posnGen;
+    /** The positions the trial may change. */
+    private final int[] _touched;
+    /** Number of _touched. */
+    private int _nTouched;
+    /** Marks n-grams already rescored, by starting position. */
+    private final int[] _windowStamp;
+    /** Current stamp for _windowStamp. */
+    private int _windowGen;
+    /** Change in score made by the trial. */
+    private double _delta;
+}
@@ -0,0 +1,74 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+/** The suite of all JUnit tests for the PlugboardSolver class.
+ *  @author Manaal Siddiqui
+ */
+public class PlugboardSolverTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** The standard upper-case alphabet. */
+    private Alphabet alpha = new Alphabet();
+
+    /** A plaintext message, which also serves as the n-gram sample. */
+    private static final String PLAIN =
+        "SHOULD YOU HAVE ANY QUESTIONS ABOUT THE STATUS OF THE CONVOY "
+        + "PLEASE CONTACT THE HARBOUR MASTER AT ONCE THE WEATHER IS "
+        + "EXPECTED TO TURN BAD TOWARDS EVENING AND ALL SHIPS MUST RETURN "
+        + "TO PORT BEFORE THE STORM ARRIVES THE ESCORT WILL MEET THE "
+        + "CONVOY AT THE USUAL POSITION AT DAWN TOMORROW AND THE FIRST "
+        + "SHIPS WILL SAIL AS SOON AS THE WEATHER ALLOWS";
+
+    /** Return a session of a five-slot, three-pawl machine (see
+     *  TestMachines), set up as for "* B Beta III IV I AXLE BCFG" with
+     *  plugboard PLUGS. */
+    private Session naval(String plugs) {
+        Session s = new Session(TestMachines.naval());
+        s.insertRotors(new String[] {"B", "Beta", "III", "IV", "I"});
+        s.setRotors("AXLE");
+        s.setRings("BCFG");
+        s.setPlugboard(new Permutation(plugs, alpha));
+        return s;
+    }
+
+    /** Return the letters of TEXT as alphabet indices. */
+    private int[] indices(String text) {
+        return text.chars().map(alpha::codePointToInt).toArray();
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void testRecoversPlugboard() {
+        String plugs = "(AR) (BZ) (DP) (QT) (HM)";
+        Session machine = naval(plugs);
+        int[] cipher = indices(machine.copy().convert(PLAIN));
+        Ngrams ngrams = new Ngrams(alpha, PLAIN);
+        PlugboardSolver solver = new PlugboardSolver(machine, cipher, ngrams);
+        Permutation found = solver.solve(new Permutation("", alpha));
+        Session check = machine.copy();
+        check.setPlugboard(found);
+        StringBuilder text = new StringBuilder();
+        for (int c : cipher) {
+            text.append(alpha.toChar(c));
+        }
+        String plain = check.convert(text.toString());
+        assertEquals(PLAIN.replace(" ", ""), plain);
+        assertEquals("(AR) (BZ) (DP) (HM) (QT)", solver.cycles());
+        Scorer full = ngrams.copy();
+        full.reset();
+        for (int i = 0; i < plain.length(); i++) {
+            full.add(alpha.toInt(plain.charAt(i)));
+        }
+        assertEquals(full.score(), solver.score(), 1e-6);
+    }
+}
@@ -50,6 +50,11 @@ class Rotor {
         return _setting;
     }
 
+    /** Return my ring setting. */
+    int ring() {
+        return _ringOffset;
+    }
+
     /** Set setting() to POSN.  */
     void set(int posn) {
         _setting = _permutation.wrap(posn);
@@ -85,10 +90,29 @@ class Rotor {
         return false;
     }
 
+    /** Return the settings at which I am at a notch, in increasing
+     *  order.  By default, there are none. */
+    int[] notches() {
+        return new int[0];
+    }
+
     /** Advance me one position, if possible. By default, does nothing. */
     void advance() {
     }
 
+    /** Return a new rotor just like me, including my current setting and
+     *  ring setting, that shares only my (unchanging) permutation. */
+    Rotor copy() {
+        return copyStateTo(new Rotor(_name, _permutation));
+    }
+
+    /** Give R my setting and ring setting, and return R. */
+    Rotor copyStateTo(Rotor r) {
+        r._setting = _setting;
+        r._ringOffset = _ringOffset;
+        return r;
+    }
+
     @Override
     public String toString() {
         return "Rotor " + _name;
@@ -101,6 +125,11 @@ class Rotor {
         _ringOffset = alphabet().toInt(cposn);
     }
 
+    /** Set ring() to INDEX. */
+    void setRingIndex(int index) {
+        _ringOffset = _permutation.wrap(index);
+    }
+
     /** Set ring to POSN.  */
     void setRing(int posn) {
         _setting = _permutation.wrap(posn);
@@ -43,4 +43,20 @@ public class RotorTest {
         iii.set(23);
         assertEquals(25, iii.convertBackward(23));
     }
+
+    @Test
+    public void testShiftNotches() {
+        MovingRotor r = new MovingRotor("I", p1, "QA");
+        assertArrayEquals(new int[] {0, 16}, r.notches());
+        r.shiftNotches('C');
+        assertArrayEquals(new int[] {14, 24}, r.notches());
+        r.set(24);
+        assertTrue(r.atNotch());
+        r.set(16);
+        assertFalse(r.atNotch());
+        Rotor copy = r.copy();
+        r.resetNotches();
+        assertTrue(r.atNotch());
+        assertFalse(copy.atNotch());
+    }
 }
@@ -0,0 +1,31 @@
+package enigma;
+
+/** Measures how much a text, given one letter at a time as indices in
+ *  an alphabet, looks like plaintext.  Higher scores are better.  A
+ *  Scorer holds the state of the text scored so far, so each thread
+ *  needs its own; copy gives one.
+ *  @author Manaal Siddiqui
+ */
+interface Scorer {
+
+    /** Start scoring a new text. */
+    void reset();
+
+    /** Add letter C to the text. */
+    void add(int c);
+
+    /** Return the score of the text so far. */
+    double score();
+
+    /** Return a score that no text formed by adding REMAINING more
+     *  letters to the text so far can exceed. */
+    double bound(int remaining);
+
+    /** Return a new Scorer that scores in the same way as me, with an
+     *  empty text. */
+    Scorer copy();
+
+    /** Return a short description of how I score, which differs
+     *  between Scorers that would score some text differently. */
+    String describe();
+}
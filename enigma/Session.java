@@ -0,0 +1,357 @@
+package enigma;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import static enigma.EnigmaException.*;
+
+/** The changing state of one Enigma machine built to a shared
+ *  MachineSpec: which rotor is in each slot, the rotor settings and
+ *  ring settings, and the plugboard.  A Session is small and cheap to
+ *  create, and is meant to be used by one thread at a time; any number
+ *  of Sessions may share a spec.  Its operations behave exactly like the
+ *  corresponding ones of Machine.
+ *  @author Manaal Siddiqui
+ */
+class Session {
+
+    /** A new session for machines built to SPEC, with no rotors inserted
+     *  and all ring settings at 0. */
+    Session(MachineSpec spec) {
+        _spec = spec;
+        _rings = new int[spec.numAvailable()];
+    }
+
+    /** A new session for SPEC in which slot i holds rotor SLOTS[i] at
+     *  setting POSITIONS[i], rotor r has ring setting RINGS[r], and the
+     *  plugboard is PLUGBOARD.  The arrays become the session's own. */
+    Session(MachineSpec spec, int[] slots, int[] positions, int[] rings,
+            Permutation plugboard) {
+        _spec = spec;
+        _slots = slots;
+        _positions = positions;
+        _rings = rings;
+        _plugboard = plugboard;
+    }
+
+    /** Return a new session in the same state as me. */
+    Session copy() {
+        return new Session(_spec, _slots == null ? null : _slots.clone(),
+                           _positions == null ? null : _positions.clone(),
+                           _rings.clone(), _plugboard);
+    }
+
+    /** Return my specification. */
+    MachineSpec spec() {
+        return _spec;
+    }
+
+    /** Return the index in my spec of the rotor in SLOT. */
+    int rotor(int slot) {
+        return _slots[slot];
+    }
+
+    /** Return the setting of the rotor in SLOT. */
+    int setting(int slot) {
+        return _positions[slot];
+    }
+
+    /** Return the ring setting of the rotor in SLOT. */
+    int ring(int slot) {
+        return _rings[_slots[slot]];
+    }
+
+    /** Return my plugboard. */
+    Permutation plugboard() {
+        return _plugboard;
+    }
+
+    /** Set my rotor slots to the rotors named ROTORS (ROTORS[0] names
+     *  the reflector), all at setting 0. */
+    void insertRotors(String[] rotors) {
+        if (rotors.length != _spec.numRotors()) {
+            throw error("the amount of rotors to be added "
+                        + "must match the capacity of the machine");
+        }
+        int[] slots = new int[rotors.length];
+        for (int i = 0; i < rotors.length; i++) {
+            slots[i] = _spec.index(rotors[i]);
+            if (slots[i] == -1) {
+                throw error("Bad rotor name");
+            }
+            for (int j = 0; j < i; j++) {
+                if (slots[j] == slots[i]) {
+                    throw error("Duplicated Rotor");
+                }
+            }
+        }
+        _slots = slots;
+        _positions = new int[slots.length];
+        _core = null;
+        _coreShifts = null;
+    }
+
+    /** Set my rotors according to SETTING, which must be a string of
+     *  numRotors()-1 characters in my alphabet. */
+    void setRotors(String setting) {
+        Alphabet alpha = _spec.alphabet();
+        int[] posns = CodePoints.of(setting);
+        if (posns.length != _slots.length - 1) {
+            throw error("Wrong initial setting");
+        }
+        for (int i = 1; i < _slots.length; i++) {
+            int curr = posns[i - 1];
+            if (!alpha.containsCodePoint(curr)) {
+                throw error("setting must be in Alphabet");
+            }
+            _positions[i] = alpha.codePointToInt(curr);
+        }
+    }
+
+    /** Set the ring settings of my non-reflector rotors from RINGS, as
+     *  for Machine.setRings. */
+    void setRings(String rings) {
+        _positions[0] = 0;
+        int[] ring = CodePoints.of(rings);
+        if (ring.length < _slots.length - 1) {
+            throw error("Wrong ring setting");
+        }
+        for (int i = 1; i < _slots.length; i++) {
+            _rings[_slots[i]] = _spec.alphabet().codePointToInt(ring[i - 1]);
+        }
+    }
+
+    /** Set the plugboard to PLUGBOARD. */
+    void setPlugboard(Permutation plugboard) {
+        _plugboard = plugboard;
+    }
+
+    /** Advance my rotors as for one keystroke (see Stepping.moves). */
+    void moveRotors() {
+        int n = _slots.length;
+        int pawls = _spec.numPawls();
+        for (int i = n - pawls; i < n; i++) {
+            int r = _slots[i];
+            if (Stepping.moves(i, n, pawls, _spec.rotates(r),
+                               _spec.atNotch(r, _positions[i]),
+                               i < n - 1 && _spec.atNotch(_slots[i + 1],
+                                                          _positions[i + 1]))) {
+                _positions[i] = wrap(_positions[i] + 1);
+            }
+        }
+    }
+
+    /** Advance my rotors as if STEPS characters had been converted. */
+    void advance(long steps) {
+        _positions = Stepping.seek(rotates(), notches(), _positions,
+                                   _spec.numPawls(),
+                                   _spec.alphabet().size(), steps);
+    }
+
+    /** Return the cycle of my rotor settings from where they are now. */
+    Stepping.Cycle cycle() {
+        return Stepping.cycle(rotates(), notches(), _positions,
+                              _spec.numPawls(), _spec.alphabet().size());
+    }
+
+    /** Return whether the rotor in each slot has a ratchet, by slot. */
+    private boolean[] rotates() {
+        boolean[] result = new boolean[_slots.length];
+        for (int i = 0; i < _slots.length; i++) {
+            result[i] = _spec.rotates(_slots[i]);
+        }
+        return result;
+    }
+
+    /** Return the notches of the rotor in each slot, by slot. */
+    private int[][] notches() {
+        int[][] result = new int[_slots.length][];
+        for (int i = 0; i < _slots.length; i++) {
+            result[i] = _spec.notches(_slots[i]);
+        }
+        return result;
+    }
+
+    /** Return the result of converting C (an index into my alphabet),
+     *  after first advancing my rotors. */
+    int convert(int c) {
+        moveRotors();
+        return convertThrough(c);
+    }
+
+    /** Store in TABLE, which has an entry for each letter of my
+     *  alphabet, the permutation that my machine applies at its current
+     *  settings, without advancing its rotors. */
+    void permutation(int[] table) {
+        for (int c = 0; c < table.length; c++) {
+            table[c] = convertThrough(c);
+        }
+    }
+
+    /** Return the result of passing C through my plugboard, rotors and
+     *  reflector at their current settings: through the rightmost rotor,
+     *  then the core of the others (see CorePool), then back. */
+    private int convertThrough(int c) {
+        int n = _slots.length;
+        int[] core = core();
+        Permutation fast = _spec.permutation(_slots[n - 1]);
+        int s = _positions[n - 1] - _rings[_slots[n - 1]];
+        int result = _plugboard.permute(c);
+        result = wrap(fast.permute(result + s) - s);
+        result = core[result];
+        result = wrap(fast.invert(result + s) - s);
+        return _plugboard.permute(result);
+    }
+
+    /** Return the core of all my rotors but the rightmost at their
+     *  current settings, from my spec's pool.  It is shared and must not
+     *  be modified. */
+    int[] core() {
+        int n = _slots.length;
+        if (_coreShifts == null) {
+            _coreShifts = new int[n];
+        }
+        boolean same = _core != null;
+        for (int i = 0; i < n - 1; i++) {
+            int s = wrap(_positions[i] - _rings[_slots[i]]);
+            same = same && s == _coreShifts[i];
+            _coreShifts[i] = s;
+        }
+        if (!same) {
+            _core = _spec.cores().get(_slots, _coreShifts);
+        }
+        return _core;
+    }
+
+    /** Convert the LEN characters of IN starting at OFF, skipping
+     *  whitespace, into OUT starting at OUTOFF, as for Machine.  Returns
+     *  the number of characters stored. */
+    int convert(char[] in, int off, int len, char[] out, int outOff) {
+        Alphabet alpha = _spec.alphabet();
+        if (!alpha.bmp()) {
+            int n = CodePoints.convert(alpha, this::convert, in, off, len,
+                                       out, outOff);
+            if (Metrics.ON) {
+                Metrics.CHARS.add(n);
+            }
+            return n;
+        }
+        int k = outOff;
+        for (int i = off; i < off + len; i++) {
+            char ch = in[i];
+            if (Character.isWhitespace(ch)) {
+                continue;
+            }
+            out[k] = alpha.toChar(convert(alpha.toInt(ch)));
+            k += 1;
+        }
+        if (Metrics.ON) {
+            Metrics.CHARS.add(k - outOff);
+        }
+        return k - outOff;
+    }
+
+    /** Returns the encoding/decoding of MSG, updating my state
+     *  accordingly. */
+    String convert(String msg) {
+        char[] buf = msg.toCharArray();
+        if (!_spec.alphabet().bmp()) {
+            buf = Arrays.copyOf(buf, 2 * buf.length);
+        }
+        int n = convert(buf, 0, msg.length(), buf, 0);
+        return new String(buf, 0, n);
+    }
+
+    /** Smallest number of characters given to one task by
+     *  convertParallel. */
+    static final int PARALLEL_GRAIN = 1 << 14;
+
+    /** Convert as for convert(char[], int, int, char[], int), but split
+     *  the message into pieces of at least PARALLEL_GRAIN characters that
+     *  are converted concurrently, each by a copy of me advanced to the
+     *  start of its piece.  The result is the same as converting
+     *  sequentially, and I am left in the same state.  If my alphabet is
+     *  not bmp(), the message is simply converted sequentially. */
+    int convertParallel(char[] in, int off, int len, char[] out,
+                        int outOff) {
+        if (!_spec.alphabet().bmp()) {
+            return convert(in, off, len, out, outOff);
+        }
+        int n = 0;
+        for (int i = off; i < off + len; i++) {
+            if (!Character.isWhitespace(in[i])) {
+                out[outOff + n] = in[i];
+                n += 1;
+            }
+        }
+        ForkJoinPool.commonPool().invoke(new ConvertTask(out, outOff,
+                                                         0, n));
+        advance(n);
+        return n;
+    }
+
+    /** Return P modulo the size of my alphabet. */
+    private int wrap(int p) {
+        int size = _spec.alphabet().size();
+        int r = p % size;
+        return r < 0 ? r + size : r;
+    }
+
+    /** Converts letters LO .. HI-1 of the whitespace-free message in
+     *  TEXT starting at BASE, in place. */
+    private class ConvertTask extends RecursiveAction {
+
+        /** A task converting letters LO .. HI-1 of the message at BASE in
+         *  TEXT. */
+        ConvertTask(char[] text, int base, int lo, int hi) {
+            _text = text;
+            _base = base;
+            _lo = lo;
+            _hi = hi;
+        }
+
+        @Override
+        protected void compute() {
+            if (_hi - _lo < 2 * PARALLEL_GRAIN) {
+                Session s = copy();
+                s.advance(_lo);
+                s.convert(_text, _base + _lo, _hi - _lo, _text,
+                          _base + _lo);
+            } else {
+                int mid = (_lo + _hi) >>> 1;
+                invokeAll(new ConvertTask(_text, _base, _lo, mid),
+                          new ConvertTask(_text, _base, mid, _hi));
+            }
+        }
+
+        /** The message being converted. */
+        private final char[] _text;
+        /** Index of the message's first letter in _text. */
+        private final int _base;
+        /** Bounds of my letters within the message. */
+        private final int _lo, _hi;
+    }
+
+    /** The specification I follow. */
+    private final MachineSpec _spec;
+
+    /** _slots[i] is the index in _spec of the rotor in slot i. */
+    private int[] _slots;
+
+    /** _positions[i] is the setting of the rotor in slot i. */
+    private int[] _positions;
+
+    /** _rings[r] is the ring setting of rotor r of _spec.  As with
+     *  Machine, a rotor keeps its ring setting when it is re-inserted. */
+    private int[] _rings;
+
+    /** My plugboard. */
+    private Permutation _plugboard;
+
+    /** The core last returned by core(), or null. */
+    private int[] _core;
+
+    /** The shifts of the rotors of _core, by slot. */
+    private int[] _coreShifts;
+}
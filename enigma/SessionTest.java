@@ -0,0 +1,83 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+import static enigma.TestMachines.*;
+
+
+/** The suite of all JUnit tests for the Session and MachineSpec classes.
+ *  @author Manaal Siddiqui
+ */
+public class SessionTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** The standard upper-case alphabet. */
+    private Alphabet alpha = new Alphabet();
+
+    /** Return a session of SPEC set up as for
+     *  "* B Beta III IV I AXLE RINGS" with plugboard PLUGS. */
+    private Session setUp(MachineSpec spec, String rings, String plugs) {
+        Session s = new Session(spec);
+        s.insertRotors(new String[] {"B", "Beta", "III", "IV", "I"});
+        s.setRotors("AXLE");
+        if (rings != null) {
+            s.setRings(rings);
+        }
+        s.setPlugboard(new Permutation(plugs, alpha));
+        return s;
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void testConvertMessage() {
+        Session s = setUp(naval(), null, "(BZ) (AR) (PD) (TQ)");
+        assertEquals("HOIHLZKOMLIUEPHMDESOKBJ",
+                     s.convert("FROM HIS SHOULDER HIAWATHA"));
+    }
+
+    @Test
+    public void testRings() {
+        Session s = setUp(naval(), "BCFG", "");
+        assertEquals("VUSZKMAGXKOSXCGZVDGYCQI",
+                     s.convert("FROM HIS SHOULDER HIAWATHA"));
+    }
+
+    @Test
+    public void testSharedSpec() {
+        MachineSpec spec = naval();
+        Session a = setUp(spec, null, "");
+        Session b = setUp(spec, null, "");
+        assertEquals("HYIHL", a.convert("FROMH"));
+        assertEquals("HYIHL", b.convert("FROMH"));
+        assertEquals("BKOML", a.convert("ISSHO"));
+        assertEquals(3, a.spec().index("beta"));
+        assertEquals(-1, spec.index("VI"));
+    }
+
+    @Test
+    public void testAdvance() {
+        Session stepped = setUp(naval(), null, "");
+        Session jumped = stepped.copy();
+        for (int k = 0; k < 1000; k += 1) {
+            stepped.moveRotors();
+        }
+        jumped.advance(1000);
+        for (int i = 0; i < 5; i += 1) {
+            assertEquals(stepped.setting(i), jumped.setting(i));
+        }
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void testDuplicateRotor() {
+        new Session(naval()).insertRotors(
+            new String[] {"B", "Beta", "III", "iii", "I"});
+    }
+}
@@ -0,0 +1,382 @@
+package enigma;
+
+import java.util.Arrays;
+import java.util.function.LongToIntFunction;
+
+import static enigma.EnigmaException.*;
+
+/** The stepping rules of Enigma machines, as arithmetic on rotor
+ *  settings.  The rule for one step is moves, which every moveRotors
+ *  method applies slot by slot.  Slots are numbered as in Machine, from
+ *  0 (the reflector)
+ *  on the left.  ROTATES[i] tells whether the rotor in slot i has a
+ *  ratchet, and NOTCHES[i] lists, in increasing order, the settings at
+ *  which it is at a notch.
+ *
+ *  Since a machine's settings evolve by a fixed rule on a finite set,
+ *  from any start they pass through a "tail" of settings that never
+ *  recur (for instance, those from which a rotor double-steps out of a
+ *  state it cannot return to) and then repeat with some period; cycle
+ *  finds both, and seek uses them to jump any number of steps.
+ *  @author Manaal Siddiqui
+ */
+final class Stepping {
+
+    /** Not instantiable. */
+    private Stepping() {
+    }
+
+    /** The shape of the sequence of a machine's settings from some
+     *  start: after tail() steps, the settings repeat every period()
+     *  steps, and no sooner. */
+    static final class Cycle {
+
+        /** A cycle with the given TAIL and PERIOD. */
+        Cycle(long tail, long period) {
+            _tail = tail;
+            _period = period;
+        }
+
+        /** Return the number of steps before the settings start to
+         *  repeat. */
+        long tail() {
+            return _tail;
+        }
+
+        /** Return the number of steps after which the settings repeat. */
+        long period() {
+            return _period;
+        }
+
+        /** Return the least number of steps that leaves the settings as
+         *  STEPS steps do. */
+        long reduce(long steps) {
+            return steps <= _tail ? steps : _tail + (steps - _tail) % _period;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("tail %d, period %d", _tail, _period);
+        }
+
+        /** Steps before the settings repeat. */
+        private final long _tail;
+        /** Steps after which they repeat. */
+        private final long _period;
+    }
+
+    /** Most steps that cycle will simulate to analyze irregular
+     *  stepping. */
+    static final long SIMULATION_LIMIT = 1L << 32;
+
+    /** Return true iff, on one step of a machine with N slots and PAWLS
+     *  pawls, the rotor in slot I (one of the last PAWLS) moves.  ROTATES
+     *  tells whether it has a ratchet, NOTCH whether it is at a notch,
+     *  and RIGHTNOTCH whether the rotor to its right is; RIGHTNOTCH is
+     *  ignored for the rightmost slot.  The rightmost rotor always moves;
+     *  any other moves when its right neighbor is at a notch, or when it
+     *  is at a notch itself (the double step) unless it is the leftmost
+     *  with a pawl.  Notches are those before the step, so callers go
+     *  through the slots from left to right.  The operators do not
+     *  short-circuit, so that Batch can apply this without branches. */
+    static boolean moves(int i, int n, int pawls, boolean rotates,
+                         boolean notch, boolean rightNotch) {
+        return rotates
+            & (i == n - 1 | rightNotch | (notch & i != n - pawls));
+    }
+
+    /** Move settings P one step, with the other arguments as for
+     *  advances. */
+    static void step(boolean[] rotates, int[][] notches, int[] p, int pawls,
+                     int size) {
+        int n = p.length;
+        for (int i = n - pawls; i < n; i++) {
+            if (moves(i, n, pawls, rotates[i], isNotch(notches[i], p[i]),
+                      i < n - 1 && isNotch(notches[i + 1], p[i + 1]))) {
+                p[i] = p[i] + 1 == size ? 0 : p[i] + 1;
+            }
+        }
+    }
+
+    /** Return the settings after STEPS steps from START, with the other
+     *  arguments as for advances.  If stepping is regular, this takes
+     *  time independent of STEPS; otherwise it takes at most about as
+     *  long as finding the cycle from START. */
+    static int[] seek(boolean[] rotates, int[][] notches, int[] start,
+                      int pawls, int size, long steps) {
+        if (regular(notches, pawls, size)) {
+            return settings(rotates, notches, start, pawls, size, steps);
+        }
+        if (steps > states(pawls, size)) {
+            steps = cycle(rotates, notches, start, pawls, size)
+                .reduce(steps);
+        }
+        int[] p = start.clone();
+        for (long k = 0; k < steps; k++) {
+            step(rotates, notches, p, pawls, size);
+        }
+        return p;
+    }
+
+    /** Return the cycle of settings from START, with the other arguments
+     *  as for advances.
+     *
+     *  With regular stepping, this works from the rightmost slot left.
+     *  Once the slots right of slot j have entered their cycle, of
+     *  period L, they are in the same state every L steps, so the
+     *  setting of slot j at those times is a function of its setting L
+     *  steps earlier.  Its settings then form a cycle of their own, of
+     *  length K <= size, and slots j and rightward repeat every K * L
+     *  steps.  Settings at any step come from advances, so this takes
+     *  O(size) evaluations per slot.  Otherwise, settings are simulated
+     *  step by step, which takes time proportional to the tail plus the
+     *  period. */
+    static Cycle cycle(boolean[] rotates, int[][] notches, int[] start,
+                       int pawls, int size) {
+        if (!regular(notches, pawls, size)) {
+            if (states(pawls, size) > SIMULATION_LIMIT) {
+                throw error("stepping too irregular to analyze");
+            }
+            return simulatedCycle(rotates, notches, start, pawls, size);
+        }
+        int n = start.length;
+        long tail = 0, period = 1;
+        for (int j = n - 1; j >= n - pawls; j--) {
+            int slot = j;
+            long base = tail, unit = period;
+            Cycle sub = brent(m -> settings(rotates, notches, start, pawls,
+                                           size, base + m * unit)[slot]);
+            try {
+                period = Math.multiplyExact(unit, sub.period());
+                long hi = Math.addExact(base,
+                                        Math.multiplyExact(sub.tail(), unit));
+                tail = firstRepeat(rotates, notches, start, pawls, size, j,
+                                   hi, period);
+            } catch (ArithmeticException excp) {
+                throw error("stepping period too long");
+            }
+        }
+        return new Cycle(tail, period);
+    }
+
+    /** Return the least t <= HI such that slots J and rightward have the
+     *  same settings after t and t + PERIOD steps from START, with the
+     *  other arguments as for advances.  They do at HI, and once they
+     *  do they always will. */
+    private static long firstRepeat(boolean[] rotates, int[][] notches,
+                                    int[] start, int pawls, int size, int j,
+                                    long hi, long period) {
+        long lo = 0;
+        while (lo < hi) {
+            long mid = lo + (hi - lo) / 2;
+            int[] a = settings(rotates, notches, start, pawls, size, mid);
+            int[] b = settings(rotates, notches, start, pawls, size,
+                               mid + period);
+            boolean same = true;
+            for (int i = j; i < a.length && same; i++) {
+                same = a[i] == b[i];
+            }
+            if (same) {
+                hi = mid;
+            } else {
+                lo = mid + 1;
+            }
+        }
+        return lo;
+    }
+
+    /** Return the cycle of the sequence whose element m is F(m), which
+     *  must be such that each element is a function of the one before,
+     *  by Brent's algorithm. */
+    private static Cycle brent(LongToIntFunction f) {
+        long power = 1, period = 1;
+        int tortoise = f.applyAsInt(0);
+        long hare = 1;
+        while (tortoise != f.applyAsInt(hare)) {
+            if (power == period) {
+                tortoise = f.applyAsInt(hare);
+                power *= 2;
+                period = 0;
+            }
+            hare += 1;
+            period += 1;
+        }
+        long tail = 0;
+        while (f.applyAsInt(tail) != f.applyAsInt(tail + period)) {
+            tail += 1;
+        }
+        return new Cycle(tail, period);
+    }
+
+    /** Return the cycle of settings from START found by simulation, with
+     *  the other arguments as for advances, by Brent's algorithm. */
+    private static Cycle simulatedCycle(boolean[] rotates, int[][] notches,
+                                        int[] start, int pawls, int size) {
+        long power = 1, period = 1;
+        int[] tortoise = start.clone();
+        int[] hare = start.clone();
+        step(rotates, notches, hare, pawls, size);
+        while (!Arrays.equals(tortoise, hare)) {
+            if (power == period) {
+                System.arraycopy(hare, 0, tortoise, 0, hare.length);
+                power *= 2;
+                period = 0;
+            }
+            step(rotates, notches, hare, pawls, size);
+            period += 1;
+        }
+        tortoise = start.clone();
+        hare = start.clone();
+        for (long k = 0; k < period; k++) {
+            step(rotates, notches, hare, pawls, size);
+        }
+        long tail = 0;
+        while (!Arrays.equals(tortoise, hare)) {
+            step(rotates, notches, tortoise, pawls, size);
+            step(rotates, notches, hare, pawls, size);
+            tail += 1;
+        }
+        return new Cycle(tail, period);
+    }
+
+    /** Return the number of combinations of settings of PAWLS rotors of
+     *  SIZE settings, or Long.MAX_VALUE if that is larger.  No tail plus
+     *  period can exceed it. */
+    private static long states(int pawls, int size) {
+        long result = 1;
+        for (int i = 0; i < pawls; i++) {
+            if (result > Long.MAX_VALUE / size) {
+                return Long.MAX_VALUE;
+            }
+            result *= size;
+        }
+        return result;
+    }
+
+    /** Return the settings after STEPS steps from START, which must be
+     *  regular, with the other arguments as for advances. */
+    private static int[] settings(boolean[] rotates, int[][] notches,
+                                  int[] start, int pawls, int size,
+                                  long steps) {
+        long[] moved = advances(rotates, notches, start, pawls, size, steps);
+        int[] result = new int[start.length];
+        for (int i = 0; i < start.length; i++) {
+            result[i] = (int) ((start[i] + moved[i] % size) % size);
+        }
+        return result;
+    }
+
+    /** Return true iff no rotor whose notches moveRotors consults (those
+     *  right of the leftmost of PAWLS pawls) has NOTCHES at two adjacent
+     *  settings out of SIZE.  Then a rotor at a notch always leaves it on
+     *  the next step, a rotor to its left is never pushed on two
+     *  consecutive steps, and a double step always lands off a notch,
+     *  which is what advances relies on. */
+    static boolean regular(int[][] notches, int pawls, int size) {
+        for (int i = notches.length - pawls + 1; i < notches.length; i++) {
+            int[] slot = notches[i];
+            for (int k = 0; k < slot.length; k++) {
+                int next = k + 1 < slot.length ? slot[k + 1]
+                    : slot[0] + size;
+                if (next - slot[k] <= 1) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /** Return the number of times the rotor in each slot moves during
+     *  STEPS steps of a machine with PAWLS pawls whose rotors have SIZE
+     *  settings and start at settings START.  Stepping must be regular.
+     *  This takes time independent of STEPS. */
+    static long[] advances(boolean[] rotates, int[][] notches, int[] start,
+                           int pawls, int size, long steps) {
+        long[] result = new long[start.length];
+        for (int i = start.length - pawls; i < start.length; i++) {
+            result[i] = advances(i, steps, rotates, notches, start, pawls,
+                                 size);
+        }
+        return result;
+    }
+
+    /** Return the number of times the rotor in slot I moves during the
+     *  first T steps, with the other arguments as for advances.
+     *
+     *  Slot I is pushed on step s whenever its right neighbor was at a
+     *  notch after step s - 1.  Since the neighbor leaves each notch on
+     *  the very next step, the number of pushes in T steps is the number
+     *  of neighbor notch positions among its first T - 1 moves (plus one
+     *  if it starts at a notch).  Except for the leftmost pawl, a rotor
+     *  pushed onto a notch also double-steps on the following step, so
+     *  its moves come in "runs": each push starts a run that ends with
+     *  the first move onto a non-notch setting.  Runs never overlap, so
+     *  after K runs the rotor has made as many moves as it takes to land
+     *  on K non-notch settings, except that a run begun on step T itself
+     *  has had time for just one move. */
+    private static long advances(int i, long t, boolean[] rotates,
+                                 int[][] notches, int[] start, int pawls,
+                                 int size) {
+        int first = start.length - pawls;
+        if (t <= 0 || i < first || !rotates[i]) {
+            return 0;
+        } else if (i == start.length - 1) {
+            return t;
+        }
+        long right = advances(i + 1, t - 1, rotates, notches, start, pawls,
+                              size);
+        boolean rightStart = isNotch(notches[i + 1], start[i + 1]);
+        long pushes = (rightStart ? 1 : 0)
+            + landings(notches[i + 1], start[i + 1], right, size);
+        if (i == first) {
+            return pushes;
+        }
+        long runs = pushes;
+        if (isNotch(notches[i], start[i]) && !rightStart) {
+            runs += 1;
+        }
+        int rightNow = (int) ((start[i + 1] + right % size) % size);
+        if (isNotch(notches[i + 1], rightNow)) {
+            return nonNotchMoves(notches[i], start[i], runs - 1, size) + 1;
+        }
+        return nonNotchMoves(notches[i], start[i], runs, size);
+    }
+
+    /** Return true iff setting POSN is one of NOTCHES. */
+    static boolean isNotch(int[] notches, int posn) {
+        for (int n : notches) {
+            if (n == posn) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** Return how many of the first MOVES moves of a rotor of SIZE
+     *  settings with the given NOTCHES, starting at setting START, land
+     *  on a notch. */
+    static long landings(int[] notches, int start, long moves, int size) {
+        long count = 0;
+        for (int n : notches) {
+            long first = Math.floorMod(n - start - 1, size) + 1;
+            if (moves >= first) {
+                count += (moves - first) / size + 1;
+            }
+        }
+        return count;
+    }
+
+    /** Return the least number of moves after which a rotor of SIZE
+     *  settings with the given NOTCHES, starting at START, has landed on
+     *  K settings that are not notches. */
+    static long nonNotchMoves(int[] notches, int start, long k, int size) {
+        long moves = k;
+        while (true) {
+            long next = k + landings(notches, start, moves, size);
+            if (next == moves) {
+                return moves;
+            }
+            moves = next;
+        }
+    }
+}
@@ -0,0 +1,124 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Random;
+
+/** The suite of all JUnit tests for the Stepping class.
+ *  @author Manaal Siddiqui
+ */
+public class SteppingTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** Ratchets of a four-slot, three-pawl machine. */
+    private static final boolean[] ROTATES = {false, false, true, true};
+
+    /** Return the notch lists of a four-slot machine whose rotors have
+     *  the notches named in NAMES, one string per slot. */
+    private int[][] notches(String... names) {
+        int[][] result = new int[names.length][];
+        for (int i = 0; i < names.length; i++) {
+            result[i] = names[i].chars().map(c -> c - 'A').toArray();
+        }
+        return result;
+    }
+
+    /** Return the cycle of settings from START found by recording every
+     *  setting along the way, with the other arguments as for
+     *  Stepping.advances. */
+    private Stepping.Cycle simulated(boolean[] rotates, int[][] notches,
+                                     int[] start, int pawls, int size) {
+        HashMap<String, Long> seen = new HashMap<>();
+        int[] p = start.clone();
+        for (long t = 0;; t += 1) {
+            Long before = seen.put(Arrays.toString(p), t);
+            if (before != null) {
+                return new Stepping.Cycle(before, t - before);
+            }
+            Stepping.step(rotates, notches, p, pawls, size);
+        }
+    }
+
+    /** Check that Stepping.cycle agrees with simulation from START, with
+     *  the other arguments as for Stepping.advances. */
+    private void checkCycle(boolean[] rotates, int[][] notches, int[] start,
+                            int pawls, int size) {
+        Stepping.Cycle expected =
+            simulated(rotates, notches, start, pawls, size);
+        Stepping.Cycle actual =
+            Stepping.cycle(rotates, notches, start, pawls, size);
+        String msg = "from " + Arrays.toString(start);
+        assertEquals(msg, expected.tail(), actual.tail());
+        assertEquals(msg, expected.period(), actual.period());
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void testSingleNotches() {
+        int[][] notches = notches("", "Q", "E", "V");
+        boolean[] rotates = {false, true, true, true};
+        checkCycle(ROTATES, notches, new int[] {0, 0, 4, 21}, 3, 26);
+        checkCycle(rotates, notches, new int[] {0, 0, 0, 0}, 3, 26);
+        checkCycle(rotates, notches, new int[] {0, 3, 4, 21}, 3, 26);
+        assertEquals(26 * 25 * 26, Stepping.cycle(rotates, notches,
+            new int[] {0, 0, 0, 0}, 3, 26).period());
+    }
+
+    @Test
+    public void testMultipleNotches() {
+        checkCycle(ROTATES, notches("", "Q", "ZM", "ZM"),
+                   new int[] {0, 0, 12, 25}, 3, 26);
+        checkCycle(new boolean[] {false, true, true, true},
+                   notches("", "ZM", "ZM", "E"), new int[] {0, 7, 25, 4},
+                   3, 26);
+    }
+
+    @Test
+    public void testIrregular() {
+        int[][] notches = notches("", "Q", "AB", "V");
+        boolean[] rotates = {false, true, true, true};
+        assertFalse(Stepping.regular(notches, 3, 26));
+        int[] start = {0, 1, 0, 21};
+        checkCycle(rotates, notches, start, 3, 26);
+        Random rand = new Random(21);
+        int[] p = start.clone();
+        long t = 0;
+        for (int k = 0; k < 50; k += 1) {
+            long next = t + rand.nextInt(2000);
+            for (; t < next; t += 1) {
+                Stepping.step(rotates, notches, p, 3, 26);
+            }
+            assertEquals("after " + t + " steps", Arrays.toString(p),
+                Arrays.toString(Stepping.seek(rotates, notches, start, 3,
+                                              26, t)));
+        }
+    }
+
+    @Test
+    public void testLongSeek() {
+        long steps = 1_000_000_000_000L;
+        for (String mid : new String[] {"E", "AB"}) {
+            int[][] notches = notches("", "Q", mid, "V");
+            int[] start = {0, 2, 1, 20};
+            Stepping.Cycle cycle =
+                Stepping.cycle(ROTATES, notches, start, 3, 26);
+            int[] reduced = Stepping.seek(ROTATES, notches, start, 3, 26,
+                                          cycle.reduce(steps));
+            int[] direct = Stepping.seek(ROTATES, notches, start, 3, 26,
+                                         steps);
+            assertEquals(mid, Arrays.toString(reduced),
+                         Arrays.toString(direct));
+        }
+    }
+}
@@ -0,0 +1,60 @@
+package enigma;
+
+import java.util.ArrayList;
+
+/** Machines shared by the JUnit tests, built from some of the rotors of
+ *  testing/correct/default.conf.
+ *  @author Manaal Siddiqui
+ */
+final class TestMachines {
+
+    /** Not instantiable. */
+    private TestMachines() {
+    }
+
+    /** The standard upper-case alphabet. */
+    static final Alphabet UPPER = new Alphabet();
+
+    /** Return rotors I, III, IV, Beta and reflector B, in that order. */
+    static ArrayList<Rotor> navalRotors() {
+        return rotors(true);
+    }
+
+    /** Return a spec for five-slot, three-pawl machines with the rotors
+     *  of navalRotors(). */
+    static MachineSpec naval() {
+        return new MachineSpec(UPPER, 5, 3, navalRotors());
+    }
+
+    /** Return a five-slot, three-pawl machine with the rotors of
+     *  navalRotors(), none of them inserted. */
+    static Machine navalMachine() {
+        return new Machine(UPPER, 5, 3, navalRotors());
+    }
+
+    /** Return a spec for three-slot, two-pawl machines with rotors I,
+     *  III, IV and reflector B, in that order. */
+    static MachineSpec small() {
+        return new MachineSpec(UPPER, 3, 2, rotors(false));
+    }
+
+    /** Return rotors I, III and IV, then Beta if BETA, then reflector
+     *  B. */
+    private static ArrayList<Rotor> rotors(boolean beta) {
+        ArrayList<Rotor> all = new ArrayList<>();
+        all.add(new MovingRotor("I", new Permutation(
+            "(AELTPHQXRU) (BKNW) (CMOY) (DFG) (IV) (JZ) (S)", UPPER), "Q"));
+        all.add(new MovingRotor("III", new Permutation(
+            "(ABDHPEJT) (CFLVMZOYQIRWUKXSG) (N)", UPPER), "V"));
+        all.add(new MovingRotor("IV", new Permutation(
+            "(AEPLIYWCOXMRFZBSTGJQNH) (DV) (KU)", UPPER), "J"));
+        if (beta) {
+            all.add(new FixedRotor("Beta", new Permutation(
+                "(ALBEVFCYODJWUGNMQTZSKPR) (HIX)", UPPER)));
+        }
+        all.add(new Reflector("B", new Permutation(
+            "(AE) (BN) (CK) (DQ) (FU) (GY) (HW) (IJ) (LO) (MP) (RX) (SZ) (TV)",
+            UPPER)));
+        return all;
+    }
+}